@@ -0,0 +1,79 @@
+package tinyurl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import tinyurl.random.ShortUrlCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache miss lookups of a url by short url, through the JPA repository against {@link UrlLookup}'s plain JDBC query, on
+ * an embedded H2 database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UrlLookupBenchmark {
+    private static final int URLS = 10000;
+    private ConfigurableApplicationContext context;
+    private UrlRepository urlRepository;
+    private UrlLookup urlLookup;
+    private String[] shortUrls;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(Application.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:lookup-benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=",
+                "--spring.datasource.password=",
+                "--spring.jpa.database=H2",
+                "--spring.jpa.database-platform=org.hibernate.dialect.MySQLDialect",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN");
+        urlRepository = context.getBean(UrlRepository.class);
+        urlLookup = context.getBean(UrlLookup.class);
+        shortUrls = new String[URLS];
+        List<Url> urls = new ArrayList<>(URLS);
+        for (int i = 0; i < URLS; i++) {
+            shortUrls[i] = ShortUrlCodec.encode(i * 7919L + 1);
+            urls.add(new Url(shortUrls[i], "http://www.example.com/" + i));
+        }
+        urlRepository.insertBatch(urls);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Url> jpa() {
+        return urlRepository.findByShortUrl(shortUrls[ThreadLocalRandom.current().nextInt(URLS)]);
+    }
+
+    @Benchmark
+    public Optional<Url> jdbc() {
+        return urlLookup.findByShortUrl(shortUrls[ThreadLocalRandom.current().nextInt(URLS)]);
+    }
+}
@@ -0,0 +1,40 @@
+package tinyurl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WindowStatBenchmark {
+    @Param({"DAY", "ALL"})
+    private String windowName;
+    private WindowStat.Window window;
+    private long millis;
+
+    @Setup
+    public void setup() {
+        // the generated benchmark code can't reference the package private window type directly
+        window = WindowStat.Window.valueOf(windowName);
+        millis = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public long getQueryTimestamp() {
+        return window.getQueryTimestamp(millis);
+    }
+}
@@ -0,0 +1,34 @@
+package tinyurl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WindowStatSerializationBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<WindowStat> windowStats = List.of(new WindowStat(WindowStat.Window.DAY, 100),
+                                                         new WindowStat(WindowStat.Window.WEEK, 1000),
+                                                         new WindowStat(WindowStat.Window.ALL, 10000));
+
+    @Benchmark
+    public String serializeWindowStats() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(windowStats);
+    }
+}
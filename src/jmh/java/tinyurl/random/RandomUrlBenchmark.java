@@ -0,0 +1,41 @@
+package tinyurl.random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RandomUrlBenchmark {
+    private final RandomUrlImpl randomUrl = new RandomUrlImpl();
+    private final char[] shortUrlChars = new char[ShortUrlCodec.SHORT_URL_LENGTH];
+    private final String shortUrl = ShortUrlCodec.encode(ShortUrlCodec.random());
+
+    @Benchmark
+    public String generate() {
+        return randomUrl.generate();
+    }
+
+    @Benchmark
+    public char[] encodeInto() {
+        ShortUrlCodec.encode(ShortUrlCodec.random(), shortUrlChars, 0);
+        return shortUrlChars;
+    }
+
+    @Benchmark
+    public long decode() {
+        return ShortUrlCodec.decode(shortUrl);
+    }
+}
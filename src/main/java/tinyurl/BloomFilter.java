@@ -0,0 +1,84 @@
+package tinyurl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set membership of strings with false positives but no false negatives, {@code k} bits set per string out of a fixed
+ * bit array. Sized for an expected number of strings and false positive rate, which rises once more are added.
+ * Thread safe, a string added concurrently with a lookup may or may not be found.
+ */
+final class BloomFilter {
+    private final int hashes;
+    private final AtomicLongArray words;
+    private final AtomicLong added;
+
+    private BloomFilter(int hashes, AtomicLongArray words, long added) {
+        this.hashes = hashes;
+        this.words = words;
+        this.added = new AtomicLong(added);
+    }
+
+    static BloomFilter create(long expected, double falsePositiveRate) {
+        long bits = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (bits + 63) / 64);
+        int hashes = (int) Math.max(1, Math.round((double) words * 64 / expected * Math.log(2)));
+        return new BloomFilter(hashes, new AtomicLongArray(words), 0);
+    }
+
+    void put(String value) {
+        long hash = ClickSketches.hash(value);
+        long bits = words.length() * 64L;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash + i * (hash >>> 32 | 1), bits);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            // a plain or would lose bits set by concurrent puts to the same word
+            if ((words.get(word) & mask) == 0) {
+                words.accumulateAndGet(word, mask, (current, set) -> current | set);
+            }
+        }
+        added.incrementAndGet();
+    }
+
+    boolean mightContain(String value) {
+        long hash = ClickSketches.hash(value);
+        long bits = words.length() * 64L;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash + i * (hash >>> 32 | 1), bits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The number of strings added, counting repeats.
+     */
+    long added() {
+        return added.get();
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(hashes);
+        out.writeLong(added.get());
+        out.writeInt(words.length());
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    static BloomFilter readFrom(DataInputStream in) throws IOException {
+        int hashes = in.readInt();
+        long added = in.readLong();
+        AtomicLongArray words = new AtomicLongArray(in.readInt());
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, in.readLong());
+        }
+        return new BloomFilter(hashes, words, added);
+    }
+}
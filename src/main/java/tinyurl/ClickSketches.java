@@ -0,0 +1,243 @@
+package tinyurl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Approximate click analytics kept in memory when {@code tinyurl.stats.sketches.enabled} is set, updated on the redirect
+ * path without touching the database:
+ * <ul>
+ * <li>unique visitors per url, a {@link HyperLogLog} of client address and user agent hashes per time bucket, merged
+ * over the buckets a window covers</li>
+ * <li>top links, a {@link CountMinSketch} of short url clicks per time bucket with the {@code top-k} short urls of the
+ * bucket as candidates, ranked by the merged estimates</li>
+ * </ul>
+ * Windows are rounded out to whole buckets. Each url tracked has a visitor sketch per bucket of the longest window and
+ * one for all time, each taking four bytes per distinct visitor up to one KB. The worst case, every url with over 256
+ * visitors in every bucket, is {@code max-urls x (3 + P7D / bucket)} KB, 31 MB with the defaults, plus 64 KB per bucket
+ * for the top links. The least recently clicked url is evicted and starts from zero when clicked again. The sketches
+ * are per node and lost on restart.
+ * <p>
+ * Like {@link HotKeys}, clicks skip the top links while another thread holds the lock, so under contention they are a
+ * sample.
+ */
+@Component
+public class ClickSketches {
+    static final int PRECISION = 10;
+    static final int DEPTH = 4;
+    static final int WIDTH = 2048;
+    private final boolean enabled;
+    private final long bucketMillis;
+    private final int topK;
+    private final Cache<Long, UrlSketch> urls;
+    private final Bucket[] buckets;
+    private final Bucket allTime = new Bucket();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Autowired
+    public ClickSketches(@Value("${tinyurl.stats.sketches.enabled:false}") boolean enabled,
+                         @Value("${tinyurl.stats.sketches.bucket:PT6H}") Duration bucket,
+                         @Value("${tinyurl.stats.sketches.max-urls:1000}") long maxUrls,
+                         @Value("${tinyurl.stats.sketches.top-k:100}") int topK) {
+        this.enabled = enabled;
+        this.bucketMillis = bucket.toMillis();
+        this.topK = topK;
+        this.urls = Caffeine.newBuilder().maximumSize(maxUrls).build();
+        // the longest window, plus the bucket it starts in
+        this.buckets = new Bucket[(int) ((UrlStatRollups.RETENTION_MILLIS + bucketMillis - 1) / bucketMillis) + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public void record(Url url, String clientAddress, String userAgent, long millis) {
+        if (!enabled) {
+            return;
+        }
+        long bucketStart = millis - Math.floorMod(millis, bucketMillis);
+        int slot = (int) Math.floorMod(bucketStart / bucketMillis, (long) buckets.length);
+        urls.get(url.getId(), id -> new UrlSketch()).add(visitorHash(clientAddress, userAgent), bucketStart, slot);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            long hash = hash(url.getShortUrl());
+            buckets[slot].add(bucketStart, url.getShortUrl(), hash);
+            allTime.add(0, url.getShortUrl(), hash);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The approximate number of distinct visitors of the url since the given time, or since it was first tracked for 0.
+     */
+    public long uniqueVisitors(long urlId, long sinceMillis) {
+        UrlSketch sketch = urls.getIfPresent(urlId);
+        return sketch == null ? 0 : sketch.estimate(sinceMillis);
+    }
+
+    /**
+     * The most clicked short urls since the given time, or since startup for 0, by approximate click count.
+     */
+    public List<TopLink> topLinks(long sinceMillis, int limit) {
+        Set<String> candidates = new HashSet<>();
+        CountMinSketch clicks;
+        lock.lock();
+        try {
+            if (sinceMillis <= 0) {
+                clicks = allTime.clicks;
+                candidates.addAll(allTime.candidates.keySet());
+            } else {
+                clicks = new CountMinSketch(DEPTH, WIDTH);
+                for (Bucket bucket : buckets) {
+                    if (bucket.covers(sinceMillis)) {
+                        clicks.merge(bucket.clicks);
+                        candidates.addAll(bucket.candidates.keySet());
+                    }
+                }
+            }
+            return candidates.stream()
+                             .map(shortUrl -> new TopLink(shortUrl, clicks.estimate(hash(shortUrl))))
+                             .sorted(Comparator.comparingLong(TopLink::clicks).reversed())
+                             .limit(limit)
+                             .toList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops a deleted url, its clicks stay in the top links counts but it is no longer a candidate.
+     */
+    public void invalidate(Url url) {
+        if (!enabled) {
+            return;
+        }
+        urls.invalidate(url.getId());
+        lock.lock();
+        try {
+            for (Bucket bucket : buckets) {
+                bucket.candidates.remove(url.getShortUrl());
+            }
+            allTime.candidates.remove(url.getShortUrl());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static long visitorHash(String clientAddress, String userAgent) {
+        return mix(hash(userAgent == null ? "" : userAgent, hash(clientAddress == null ? "" : clientAddress, 0)));
+    }
+
+    static long hash(String value) {
+        return mix(hash(value, 0));
+    }
+
+    /**
+     * FNV-1a over the chars of the value.
+     */
+    private static long hash(String value, long seed) {
+        long hash = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * The MurmurHash3 finalizer, spreading every input bit over the high bits the sketches index by.
+     */
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    public record TopLink(String shortUrl, long clicks) {
+    }
+
+    private final class UrlSketch {
+        private final HyperLogLog allTime = new HyperLogLog(PRECISION);
+        private final HyperLogLog[] visitors = new HyperLogLog[buckets.length];
+        private final long[] starts = new long[buckets.length];
+
+        synchronized void add(long visitorHash, long bucketStart, int slot) {
+            allTime.add(visitorHash);
+            if (visitors[slot] == null) {
+                visitors[slot] = new HyperLogLog(PRECISION);
+            } else if (starts[slot] != bucketStart) {
+                visitors[slot].clear();
+            }
+            starts[slot] = bucketStart;
+            visitors[slot].add(visitorHash);
+        }
+
+        synchronized long estimate(long sinceMillis) {
+            if (sinceMillis <= 0) {
+                return allTime.estimate();
+            }
+            HyperLogLog union = new HyperLogLog(PRECISION);
+            for (int i = 0; i < visitors.length; i++) {
+                if (visitors[i] != null && starts[i] + bucketMillis > sinceMillis) {
+                    union.merge(visitors[i]);
+                }
+            }
+            return union.estimate();
+        }
+    }
+
+    private final class Bucket {
+        private long start = -1;
+        private final CountMinSketch clicks = new CountMinSketch(DEPTH, WIDTH);
+        private final Map<String, Long> candidates = new HashMap<>(topK * 2);
+
+        void add(long bucketStart, String shortUrl, long hash) {
+            if (start != bucketStart) {
+                start = bucketStart;
+                clicks.clear();
+                candidates.clear();
+            }
+            clicks.add(hash, 1);
+            long estimate = clicks.estimate(hash);
+            if (candidates.containsKey(shortUrl) || candidates.size() < topK) {
+                candidates.put(shortUrl, estimate);
+                return;
+            }
+            Map.Entry<String, Long> min = null;
+            for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+                if (min == null || candidate.getValue() < min.getValue()) {
+                    min = candidate;
+                }
+            }
+            if (estimate > min.getValue()) {
+                candidates.remove(min.getKey());
+                candidates.put(shortUrl, estimate);
+            }
+        }
+
+        boolean covers(long sinceMillis) {
+            return start >= 0 && start + bucketMillis > sinceMillis;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package tinyurl;
+
+import java.util.Arrays;
+
+/**
+ * Counts 64 bit hashes in {@code depth} rows of {@code width} counters. An estimate never undercounts and overcounts by
+ * at most {@code e / width} of the total with probability {@code 1 - e^-depth}. Sketches of the same shape merge by
+ * adding their counters. Not thread safe.
+ */
+final class CountMinSketch {
+    private final int depth;
+    private final int mask;
+    private final long[] counters;
+
+    /**
+     * @param width rounded up to a power of two
+     */
+    CountMinSketch(int depth, int width) {
+        int rowWidth = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+        this.depth = depth;
+        this.mask = rowWidth - 1;
+        this.counters = new long[depth * rowWidth];
+    }
+
+    void add(long hash, long count) {
+        for (int row = 0; row < depth; row++) {
+            counters[index(hash, row)] += count;
+        }
+    }
+
+    long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    void merge(CountMinSketch other) {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+    }
+
+    void clear() {
+        Arrays.fill(counters, 0);
+    }
+
+    /**
+     * Row hashes derived from two halves of the hash, {@code h1 + row * h2}.
+     */
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * (mask + 1) + ((h1 + row * h2) & mask);
+    }
+}
@@ -0,0 +1,195 @@
+package tinyurl;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tinyurl.random.ShortUrlSequence;
+import tinyurl.shard.ShardRouter;
+import tinyurl.shard.ShardRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Datasources. Repository reads marked {@code @Transactional(readOnly = true)}, the short url lookups and the stats
+ * counts, go to the replica pool when {@code tinyurl.datasource.replica.url} is set and everything else to the primary
+ * in {@code spring.datasource}.
+ * <p>
+ * With {@code tinyurl.datasource.stats.url} set, url_stats and url_stat_rollups live in a separate database and
+ * persistence unit, optionally with its own replica in {@code tinyurl.datasource.stats-replica}. Stats writes then run
+ * in {@link #STATS_TRANSACTION_MANAGER}, which is an alias of the primary transaction manager otherwise.
+ * <p>
+ * With {@code tinyurl.shards.count} above 1, urls are spread over shards: shard 0 is the datasource above and shard i
+ * is {@code tinyurl.datasource.shards[i]}, each with an optional replica under its own replica prefix. See
+ * {@link ShardRouter}.
+ * <p>
+ * Each pool is sized with the hikari.* properties under its own prefix.
+ */
+@Configuration
+public class DataSourceConfig {
+    public static final String STATS_TRANSACTION_MANAGER = "statsTransactionManager";
+    static final String REPLICA_PREFIX = "tinyurl.datasource.replica";
+    static final String STATS_PREFIX = "tinyurl.datasource.stats";
+    static final String STATS_REPLICA_PREFIX = "tinyurl.datasource.stats-replica";
+    static final String SHARDS_PREFIX = "tinyurl.datasource.shards";
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, Environment environment) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        DataSource shard0 = withReplica(primary, environment, REPLICA_PREFIX);
+        int shards = Math.max(environment.getProperty("tinyurl.shards.count", Integer.class, 1),
+                              environment.getProperty("tinyurl.shards.previous-count", Integer.class, 1));
+        if (shards == 1) {
+            return shard0;
+        }
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(0, shard0);
+        for (int shard = 1; shard < shards; shard++) {
+            String prefix = SHARDS_PREFIX + "[" + shard + "]";
+            targets.put(shard, withReplica(hikari(environment, prefix), environment, prefix + ".replica"));
+        }
+        ShardRoutingDataSource routing = new ShardRoutingDataSource();
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(shard0);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Bean
+    public static BeanDefinitionRegistryPostProcessor statsTransactionManagerAlias(Environment environment) {
+        return registry -> {
+            if (!environment.containsProperty(STATS_PREFIX + ".url")) {
+                registry.registerAlias("transactionManager", STATS_TRANSACTION_MANAGER);
+            }
+        };
+    }
+
+    static DataSource withReplica(HikariDataSource primary, Environment environment, String replicaPrefix) {
+        if (!environment.containsProperty(replicaPrefix + ".url")) {
+            return primary;
+        }
+        ReadOnlyRoutingDataSource routing = new ReadOnlyRoutingDataSource();
+        routing.setTargetDataSources(Map.of(false, primary, true, hikari(environment, replicaPrefix)));
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+        // defer fetching the connection until the transaction's read-only flag is known
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    static HikariDataSource hikari(Environment environment, String prefix) {
+        Binder binder = Binder.get(environment);
+        DataSourceProperties properties = binder.bind(prefix, DataSourceProperties.class).get();
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(prefix.substring(prefix.lastIndexOf('.') + 1));
+        binder.bind(prefix + ".hikari", Bindable.ofInstance(dataSource));
+        return dataSource;
+    }
+
+    private static Map<String, Object> vendorProperties(JpaProperties jpaProperties, HibernateProperties hibernateProperties) {
+        return hibernateProperties.determineHibernateProperties(jpaProperties.getProperties(), new HibernateSettings());
+    }
+
+    static class ReadOnlyRoutingDataSource extends AbstractRoutingDataSource {
+        @Override
+        protected Object determineCurrentLookupKey() {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        }
+    }
+
+    /**
+     * The urls persistence unit, declared explicitly once the stats unit exists since Spring Boot then backs off.
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = STATS_PREFIX, name = "url")
+    @EnableJpaRepositories(basePackageClasses = Application.class,
+            excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                    classes = {UrlStatRepository.class, UrlStatRollupRepository.class}))
+    static class UrlsPersistenceUnit {
+        @Bean
+        @Primary
+        public LocalContainerEntityManagerFactoryBean entityManagerFactory(EntityManagerFactoryBuilder builder,
+                                                                           DataSource dataSource,
+                                                                           JpaProperties jpaProperties,
+                                                                           HibernateProperties hibernateProperties) {
+            return builder.dataSource(dataSource)
+                          .managedTypes(PersistenceManagedTypes.of(Url.class.getName(), ShortUrlSequence.class.getName()))
+                          .properties(vendorProperties(jpaProperties, hibernateProperties))
+                          .persistenceUnit("urls")
+                          .build();
+        }
+
+        @Bean
+        @Primary
+        public PlatformTransactionManager transactionManager(@Qualifier("entityManagerFactory") EntityManagerFactory entityManagerFactory) {
+            return new JpaTransactionManager(entityManagerFactory);
+        }
+
+        @Bean
+        public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = STATS_PREFIX, name = "url")
+    @EnableJpaRepositories(basePackageClasses = Application.class,
+            includeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                    classes = {UrlStatRepository.class, UrlStatRollupRepository.class}),
+            entityManagerFactoryRef = "statsEntityManagerFactory",
+            transactionManagerRef = STATS_TRANSACTION_MANAGER)
+    static class StatsPersistenceUnit {
+        @Bean
+        public DataSource statsDataSource(Environment environment) {
+            return withReplica(hikari(environment, STATS_PREFIX), environment, STATS_REPLICA_PREFIX);
+        }
+
+        @Bean
+        public LocalContainerEntityManagerFactoryBean statsEntityManagerFactory(EntityManagerFactoryBuilder builder,
+                                                                                @Qualifier("statsDataSource") DataSource statsDataSource,
+                                                                                JpaProperties jpaProperties,
+                                                                                HibernateProperties hibernateProperties) {
+            return builder.dataSource(statsDataSource)
+                          .managedTypes(PersistenceManagedTypes.of(UrlStat.class.getName(), UrlStatRollup.class.getName()))
+                          .properties(vendorProperties(jpaProperties, hibernateProperties))
+                          .persistenceUnit("stats")
+                          .build();
+        }
+
+        @Bean(STATS_TRANSACTION_MANAGER)
+        public PlatformTransactionManager statsTransactionManager(@Qualifier("statsEntityManagerFactory") EntityManagerFactory statsEntityManagerFactory) {
+            return new JpaTransactionManager(statsEntityManagerFactory);
+        }
+
+        @Bean
+        public JdbcTemplate statsJdbcTemplate(@Qualifier("statsDataSource") DataSource statsDataSource) {
+            return new JdbcTemplate(statsDataSource);
+        }
+    }
+}
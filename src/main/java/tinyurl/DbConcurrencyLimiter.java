@@ -0,0 +1,45 @@
+package tinyurl;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of concurrent database queries at the size of the connection pool, so callers wait for a permit
+ * here instead of holding a thread each while waiting for a connection.
+ */
+public class DbConcurrencyLimiter {
+    private final Semaphore permits;
+    private final Duration timeout;
+
+    public DbConcurrencyLimiter(int permits, Duration timeout) {
+        this.permits = new Semaphore(permits, true);
+        this.timeout = timeout;
+    }
+
+    public long call(LongSupplier query) {
+        return call((Supplier<Long>) query::getAsLong);
+    }
+
+    public <T> T call(Supplier<T> query) {
+        try {
+            if (!permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Timed out waiting for a database permit.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a database permit.", ex);
+        }
+        try {
+            return query.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+}
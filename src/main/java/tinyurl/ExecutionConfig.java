@@ -0,0 +1,70 @@
+package tinyurl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Threading of the stats fan-out. With {@code spring.threads.virtual.enabled} on Java 21+, Tomcat and the stats
+ * queries run on virtual threads and only the {@link DbConcurrencyLimiter} bounds how many queries hit the connection
+ * pool at once. Otherwise the stats queries run on a fixed pool of platform threads.
+ */
+@Configuration
+public class ExecutionConfig {
+    private static final Logger log = LogManager.getLogger();
+
+    @Bean
+    public AsyncTaskExecutor statsExecutor(Environment environment, @Value("${tinyurl.stats.threads:10}") int threads) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("stats-");
+            executor.setVirtualThreads(true);
+            return executor;
+        }
+        if (environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            log.warn("Virtual threads require Java 21, running stats queries on platform threads.");
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("stats-");
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        return executor;
+    }
+
+    /**
+     * Sized to the pool the stats counts read from: the stats replica or stats pool when the stats live apart, otherwise
+     * the replica or the primary pool.
+     */
+    @Bean
+    public DbConcurrencyLimiter dbConcurrencyLimiter(Environment environment) {
+        String prefix = statsReadPrefix(environment);
+        int permits = environment.getProperty(prefix + ".hikari.maximum-pool-size", Integer.class, 10);
+        long timeoutMillis = environment.getProperty(prefix + ".hikari.connection-timeout", Long.class, 30000L);
+        return new DbConcurrencyLimiter(permits, Duration.ofMillis(timeoutMillis));
+    }
+
+    static String statsReadPrefix(Environment environment) {
+        List<String> prefixes = environment.containsProperty(DataSourceConfig.STATS_PREFIX + ".url")
+                ? List.of(DataSourceConfig.STATS_REPLICA_PREFIX, DataSourceConfig.STATS_PREFIX)
+                : List.of(DataSourceConfig.REPLICA_PREFIX, "spring.datasource");
+        return environment.containsProperty(prefixes.get(0) + ".url") ? prefixes.get(0) : prefixes.get(1);
+    }
+
+    /**
+     * Shares the window counts of a url between concurrent /urlStats requests, and for {@code memo-ttl} after.
+     */
+    @Bean
+    public SingleFlight<Long, List<WindowStat>> urlStatsSingleFlight(@Value("${tinyurl.stats.single-flight.memo-ttl:PT0S}") Duration memoTtl,
+                                                                    @Value("${tinyurl.stats.single-flight.memo-size:10000}") long memoSize) {
+        return new SingleFlight<>("url_stats", memoTtl, memoSize);
+    }
+}
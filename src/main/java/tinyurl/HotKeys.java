@@ -0,0 +1,95 @@
+package tinyurl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks the most redirected short urls with the Space-Saving algorithm in a fixed number of counters, exposed on the
+ * hotkeys actuator endpoint rather than as meters so short urls don't become metric tags. A count overestimates the
+ * true count by at most its error.
+ * <p>
+ * Redirects skip recording while another thread holds the lock, so under contention the counts are a sample.
+ */
+@Component
+@Endpoint(id = "hotkeys")
+public class HotKeys {
+    private final boolean enabled;
+    private final int size;
+    private final Map<String, Counter> counters;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Autowired
+    public HotKeys(@Value("${tinyurl.metrics.hot-keys.enabled:false}") boolean enabled,
+                   @Value("${tinyurl.metrics.hot-keys.size:100}") int size) {
+        this.enabled = enabled;
+        this.size = size;
+        this.counters = new HashMap<>(size * 2);
+    }
+
+    public void record(String shortUrl) {
+        if (!enabled || !lock.tryLock()) {
+            return;
+        }
+        try {
+            Counter counter = counters.get(shortUrl);
+            if (counter != null) {
+                counter.count++;
+            } else if (counters.size() < size) {
+                counters.put(shortUrl, new Counter(1, 0));
+            } else {
+                evictMin(shortUrl);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @ReadOperation
+    public List<HotKey> hotKeys() {
+        List<HotKey> hotKeys = new ArrayList<>(size);
+        lock.lock();
+        try {
+            counters.forEach((shortUrl, counter) -> hotKeys.add(new HotKey(shortUrl, counter.count, counter.error)));
+        } finally {
+            lock.unlock();
+        }
+        hotKeys.sort(Comparator.comparingLong(HotKey::count).reversed());
+        return hotKeys;
+    }
+
+    private void evictMin(String shortUrl) {
+        String minShortUrl = null;
+        long minCount = Long.MAX_VALUE;
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            if (entry.getValue().count < minCount) {
+                minShortUrl = entry.getKey();
+                minCount = entry.getValue().count;
+            }
+        }
+        counters.remove(minShortUrl);
+        counters.put(shortUrl, new Counter(minCount + 1, minCount));
+    }
+
+    public record HotKey(String shortUrl, long count, long error) {
+    }
+
+    private static class Counter {
+        private long count;
+        private final long error;
+
+        private Counter(long count, long error) {
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package tinyurl;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the number of distinct 64 bit hashes added, within about {@code 1.04 / sqrt(2^precision)}, in at most
+ * {@code 2^precision} bytes. Two sketches of the same precision merge into the sketch of the union of their hashes.
+ * Not thread safe.
+ * <p>
+ * A sketch starts sparse, as the sorted non-zero registers packed with their index in four bytes each, and turns dense
+ * once that stops being smaller than one byte per register. A sketch of a few distinct hashes takes a few bytes.
+ */
+final class HyperLogLog {
+    private static final int INITIAL_SPARSE_SIZE = 4;
+    private final int precision;
+    private final int sparseLimit;
+    private int[] sparse = new int[INITIAL_SPARSE_SIZE];
+    private int sparseSize;
+    private byte[] registers;
+
+    HyperLogLog(int precision) {
+        this.precision = precision;
+        this.sparseLimit = (1 << precision) / Integer.BYTES;
+    }
+
+    void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the marker bit bounds the rank when the remaining bits are all zero
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        set(index, rank);
+    }
+
+    void merge(HyperLogLog other) {
+        if (other.registers == null) {
+            for (int i = 0; i < other.sparseSize; i++) {
+                set(other.sparse[i] >>> 8, (byte) other.sparse[i]);
+            }
+            return;
+        }
+        if (registers == null) {
+            densify();
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Empties the sketch, which turns sparse again.
+     */
+    void clear() {
+        if (registers != null) {
+            registers = null;
+            sparse = new int[INITIAL_SPARSE_SIZE];
+        }
+        sparseSize = 0;
+    }
+
+    long estimate() {
+        int m = 1 << precision;
+        double sum = 0;
+        int zeros = 0;
+        if (registers == null) {
+            zeros = m - sparseSize;
+            sum = zeros;
+            for (int i = 0; i < sparseSize; i++) {
+                sum += 1.0 / (1L << (byte) sparse[i]);
+            }
+        } else {
+            for (byte register : registers) {
+                sum += 1.0 / (1L << register);
+                if (register == 0) {
+                    zeros++;
+                }
+            }
+        }
+        double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        // linear counting is more accurate while many registers are still empty
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private void set(int index, byte rank) {
+        if (registers != null) {
+            if (rank > registers[index]) {
+                registers[index] = rank;
+            }
+            return;
+        }
+        int position = find(index);
+        if (position >= 0) {
+            if (rank > (byte) sparse[position]) {
+                sparse[position] = index << 8 | rank;
+            }
+            return;
+        }
+        if (sparseSize == sparseLimit) {
+            densify();
+            registers[index] = rank;
+            return;
+        }
+        position = -position - 1;
+        if (sparseSize == sparse.length) {
+            sparse = Arrays.copyOf(sparse, Math.min(sparse.length * 2, sparseLimit));
+        }
+        System.arraycopy(sparse, position, sparse, position + 1, sparseSize - position);
+        sparse[position] = index << 8 | rank;
+        sparseSize++;
+    }
+
+    /**
+     * The position of the register in the sparse array, or {@code -(insertion point) - 1} when it is zero.
+     */
+    private int find(int index) {
+        int low = 0;
+        int high = sparseSize - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleIndex = sparse[middle] >>> 8;
+            if (middleIndex < index) {
+                low = middle + 1;
+            } else if (middleIndex > index) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    private void densify() {
+        registers = new byte[1 << precision];
+        for (int i = 0; i < sparseSize; i++) {
+            registers[sparse[i] >>> 8] = (byte) sparse[i];
+        }
+        sparse = null;
+        sparseSize = 0;
+    }
+}
@@ -0,0 +1,148 @@
+package tinyurl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import tinyurl.shard.ShardRouter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Finds the existing short url of a long url when {@code tinyurl.dedup.enabled} is set, by the long_url_hash column with
+ * a cache of recent hashes in front. Cache hits are checked against {@link UrlCache}, so a url deleted on this node is
+ * not handed out again.
+ * <p>
+ * The unique index on long_url_hash makes a concurrent create of the same long url fail, after which the winner is
+ * found here. With several shards, the hash is looked up on each and only unique per shard, so two nodes racing on
+ * different shards can both create a short url for the same long url.
+ */
+@Component
+public class LongUrlIndex implements MeterBinder {
+    private final boolean enabled;
+    private final UrlRepository urlRepository;
+    private final UrlCache urlCache;
+    private final ShardRouter shardRouter;
+    private final Cache<Long, String> shortUrls;
+
+    @Autowired
+    public LongUrlIndex(@Value("${tinyurl.dedup.enabled:false}") boolean enabled,
+                        @Value("${tinyurl.dedup.cache-size:100000}") long cacheSize,
+                        UrlRepository urlRepository,
+                        UrlCache urlCache,
+                        ShardRouter shardRouter) {
+        this.enabled = enabled;
+        this.urlRepository = urlRepository;
+        this.urlCache = urlCache;
+        this.shardRouter = shardRouter;
+        this.shortUrls = Caffeine.newBuilder().maximumSize(cacheSize).recordStats().build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Optional<Url> find(String longUrl) {
+        String normalized = normalize(longUrl);
+        long hash = hash(normalized);
+        String shortUrl = shortUrls.getIfPresent(hash);
+        if (shortUrl != null) {
+            Optional<Url> url = urlCache.findByShortUrl(shortUrl).filter(cached -> matches(cached, normalized));
+            if (url.isPresent()) {
+                return url;
+            }
+            shortUrls.invalidate(hash);
+        }
+        for (int shard = 0; shard < Math.max(shardRouter.count(), shardRouter.previousCount()); shard++) {
+            Optional<Url> url = ShardRouter.onShard(shard, () -> urlRepository.findByLongUrlHash(hash));
+            // a different long url with the same hash was created first, this one is then not deduplicated
+            if (url.isPresent() && matches(url.get(), normalized)) {
+                put(url.get());
+                return url;
+            }
+        }
+        return Optional.empty();
+    }
+
+    public void put(Url url) {
+        if (url.getLongUrlHash() != null) {
+            shortUrls.put(url.getLongUrlHash(), url.getShortUrl());
+        }
+    }
+
+    public void invalidate(Url url) {
+        if (url.getLongUrlHash() != null) {
+            shortUrls.invalidate(url.getLongUrlHash());
+        }
+    }
+
+    /**
+     * Exports the front cache stats as the cache.* meters tagged with cache=long_urls.
+     */
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        new CaffeineCacheMetrics<>(shortUrls, "long_urls", Tags.empty()).bindTo(registry);
+    }
+
+    private static boolean matches(Url url, String normalizedLongUrl) {
+        return normalize(url.getLongUrl()).equals(normalizedLongUrl);
+    }
+
+    /**
+     * Whether a failed insert collided on the long_url_hash key, rather than on the short url.
+     */
+    public static boolean isHashTaken(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            // by key name, the failed statement in the message names the column either way
+            String message = cause.getMessage();
+            if (message != null && message.toLowerCase(Locale.ROOT).contains(Url.LONG_URL_HASH_KEY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The first 8 bytes of the SHA-256 of the normalized long url.
+     */
+    public static long hash(String normalizedLongUrl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalizedLongUrl.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Trims the long url, adds the http scheme redirects default to, lower cases the scheme and host and drops an empty
+     * path, so urls redirecting to the same place share a hash. Path and query are left as given.
+     */
+    public static String normalize(String longUrl) {
+        String url = longUrl.trim();
+        int schemeEnd = url.indexOf("://");
+        String scheme = schemeEnd >= 0 ? url.substring(0, schemeEnd).toLowerCase(Locale.ROOT) : "http";
+        String rest = schemeEnd >= 0 ? url.substring(schemeEnd + 3) : url;
+        int hostEnd = rest.length();
+        for (int i = 0; i < rest.length(); i++) {
+            char c = rest.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                hostEnd = i;
+                break;
+            }
+        }
+        String path = rest.substring(hostEnd);
+        return scheme + "://" + rest.substring(0, hostEnd).toLowerCase(Locale.ROOT) + ("/".equals(path) ? "" : path);
+    }
+}
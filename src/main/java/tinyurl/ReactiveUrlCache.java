@@ -0,0 +1,58 @@
+package tinyurl;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * {@link UrlCache} for the reactive stack, loading through {@link ReactiveUrlRepository} without blocking. Concurrent
+ * misses of the same short url share one query.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUrlCache implements MeterBinder {
+    private final AsyncLoadingCache<String, Optional<Url>> cache;
+
+    @Autowired
+    public ReactiveUrlCache(ReactiveUrlRepository reactiveUrlRepository,
+                            @Value("${tinyurl.cache.max-size:100000}") long maxSize,
+                            @Value("${tinyurl.cache.ttl:PT10M}") Duration ttl,
+                            @Value("${tinyurl.cache.negative-ttl:PT30S}") Duration negativeTtl) {
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(maxSize)
+                             .expireAfter(new UrlCache.UrlExpiry(ttl.toNanos(), negativeTtl.toNanos()))
+                             .recordStats()
+                             .buildAsync((shortUrl, executor) -> reactiveUrlRepository.findByShortUrl(shortUrl)
+                                                                                      .map(Optional::of)
+                                                                                      .defaultIfEmpty(Optional.empty())
+                                                                                      .toFuture());
+    }
+
+    public Mono<Optional<Url>> findByShortUrl(String shortUrl) {
+        return Mono.fromFuture(() -> cache.get(shortUrl));
+    }
+
+    public void invalidate(String shortUrl) {
+        cache.synchronous().invalidate(shortUrl);
+    }
+
+    /**
+     * Exports the cache stats as the cache.* meters tagged with cache=reactive_urls.
+     */
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        new CaffeineCacheMetrics<>(cache.synchronous(), "reactive_urls", Tags.empty()).bindTo(registry);
+    }
+}
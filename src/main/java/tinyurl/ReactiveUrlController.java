@@ -0,0 +1,254 @@
+package tinyurl;
+
+import io.micrometer.common.util.StringUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+import tinyurl.clicks.ClickPipeline;
+import tinyurl.clicks.ClickWriter;
+import tinyurl.random.RandomUrl;
+import tinyurl.random.ShortUrlCodec;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static tinyurl.UrlController.MAX_ATTEMPTS;
+import static tinyurl.UrlController.URL_PREFIX;
+
+/**
+ * {@link UrlController} on WebFlux, for the reactive profile. Lookups, inserts and deletes of urls go through
+ * {@link ReactiveUrlRepository} without blocking. Work still done over JDBC, reserving short url blocks, deduplication
+ * lookups and deleting the stats of a deleted url, runs on the bounded elastic scheduler. Bulk creates are only served
+ * by the servlet stack.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUrlController {
+    private static final String NOT_FOUND_MSG = "No url found for the short url provided.";
+    private static final String MISSING_LONG_URL_MSG = "Please provide a long url to be shortened.";
+    private static final String CREATE_UNAVAILABLE_MSG = "Unable to create short url, please try again later.";
+    private static final String CREATE_CONFLICT_MSG = "Failed to create short url, please retry.";
+    private static final Logger log = LogManager.getLogger();
+    @Autowired
+    private ReactiveUrlRepository reactiveUrlRepository;
+    @Autowired
+    private ReactiveUrlCache reactiveUrlCache;
+    @Autowired
+    private ClickPipeline clickPipeline;
+    @Autowired
+    private ClickWriter clickWriter;
+    @Autowired
+    private RandomUrl randomUrl;
+    @Autowired
+    private HotKeys hotKeys;
+    @Autowired
+    private LongUrlIndex longUrlIndex;
+    @Autowired
+    private ClickSketches clickSketches;
+    @Autowired
+    private ShortUrlFilter shortUrlFilter;
+    @Autowired
+    private UrlReaper urlReaper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private Clock clock;
+    @Value("${tinyurl.redirect.status:OK}")
+    private HttpStatus redirectStatus;
+    @Value("${tinyurl.redirect.cache-control:no-cache}")
+    private String redirectCacheControl;
+    @Value("${tinyurl.redirect.permanent-opt-outs:false}")
+    private boolean permanentOptOuts;
+    @Value("${tinyurl.redirect.opt-out-cache-control:public, max-age=86400}")
+    private String optOutCacheControl;
+
+    @GetMapping("/url/{shortUrl}")
+    public Mono<ResponseEntity<String>> redirect(@PathVariable String shortUrl, ServerHttpRequest request) {
+        if (!ShortUrlCodec.isValid(shortUrl) || !shortUrlFilter.mightExist(shortUrl)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG));
+        }
+        return reactiveUrlCache.findByShortUrl(shortUrl)
+                               .onErrorMap(ex -> {
+                                   log.error("Failed fetching url for short url.", ex);
+                                   return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                                                                      "Unable to find long url, please try again later.");
+                               })
+                               .flatMap(optUrl -> {
+                                   Url url = optUrl.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG));
+                                   long millis = clock.millis();
+                                   if (url.isExpired(millis)) {
+                                       return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG));
+                                   }
+                                   hotKeys.record(shortUrl);
+                                   urlReaper.recordAccess(url, millis);
+                                   if (url.isStatsOptOut()) {
+                                       return Mono.just(redirectResponse(url, request));
+                                   }
+                                   clickSketches.record(url, clientAddress(request),
+                                                        request.getHeaders().getFirst(HttpHeaders.USER_AGENT), millis);
+                                   // the pipeline can block under backpressure, which must not park the event loop
+                                   return Mono.fromRunnable(() -> clickPipeline.record(url.getId(), millis))
+                                              .subscribeOn(Schedulers.boundedElastic())
+                                              .thenReturn(redirectResponse(url, request));
+                               });
+    }
+
+    /**
+     * The response {@link UrlController#redirect} writes.
+     */
+    private ResponseEntity<String> redirectResponse(Url url, ServerHttpRequest request) {
+        boolean permanent = permanentOptOuts && url.isStatsOptOut();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CACHE_CONTROL, permanent ? optOutCacheControl : redirectCacheControl);
+        headers.set(HttpHeaders.ETAG, url.getEtag());
+        if (url.getEtag().equals(request.getHeaders().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        HttpStatus status = permanent ? HttpStatus.MOVED_PERMANENTLY : redirectStatus;
+        if (status == HttpStatus.OK) {
+            headers.setContentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8));
+            return new ResponseEntity<>(url.getLongUrl(), headers, status);
+        }
+        headers.set(HttpHeaders.LOCATION, url.getLocation());
+        return new ResponseEntity<>(headers, status);
+    }
+
+    private static String clientAddress(ServerHttpRequest request) {
+        InetSocketAddress address = request.getRemoteAddress();
+        return address != null && address.getAddress() != null ? address.getAddress().getHostAddress() : null;
+    }
+
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @DeleteMapping("/url/{shortUrl}")
+    public Mono<Void> delete(@PathVariable String shortUrl) {
+        if (!ShortUrlCodec.isValid(shortUrl)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG));
+        }
+        boolean soft = urlReaper.isSoftDeleting();
+        // not through the cache, a cached miss would leave the url's clicks behind
+        return reactiveUrlRepository.findByShortUrl(shortUrl)
+                                    .map(Optional::of)
+                                    .defaultIfEmpty(Optional.empty())
+                                    .flatMap(url -> (soft ? reactiveUrlRepository.deleteSoftly(shortUrl, clock.millis())
+                                                          : reactiveUrlRepository.deleteByShortUrl(shortUrl)).thenReturn(url))
+                                    .flatMap(url -> {
+                                        reactiveUrlCache.invalidate(shortUrl);
+                                        return url.map(deleted -> {
+                                            longUrlIndex.invalidate(deleted);
+                                            clickSketches.invalidate(deleted);
+                                            if (soft) {
+                                                return Mono.empty();
+                                            }
+                                            clickPipeline.forget(deleted.getId(), clock.millis());
+                                            return Mono.fromRunnable(() -> clickWriter.delete(deleted.getId()))
+                                                       .subscribeOn(Schedulers.boundedElastic());
+                                        }).orElseGet(Mono::empty);
+                                    })
+                                    .onErrorMap(ex -> {
+                                        log.error("Failed deleting the short url.", ex);
+                                        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                                                                           "Unable to delete short url, please try again later.");
+                                    })
+                                    .then();
+    }
+
+    @PostMapping("/url")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<String> create(@RequestBody Map<String, String> body) {
+        String longUrl = body.get("longUrl");
+        if (StringUtils.isEmpty(longUrl)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, MISSING_LONG_URL_MSG));
+        }
+        boolean statsOptOut = "false".equals(body.get("trackClicks"));
+        Long expiresAtMillis;
+        try {
+            expiresAtMillis = UrlController.expiresAtMillis(body, clock.millis());
+        } catch (ResponseStatusException ex) {
+            return Mono.error(ex);
+        }
+        // urls opted out of click stats redirect differently and expiring urls go away, so they get short urls of their own
+        Long longUrlHash = longUrlIndex.isEnabled() && !statsOptOut && expiresAtMillis == null
+                ? LongUrlIndex.hash(LongUrlIndex.normalize(longUrl)) : null;
+        AtomicBoolean hashTaken = new AtomicBoolean();
+        return existing(longUrl, longUrlHash)
+                .switchIfEmpty(Mono.defer(() -> {
+                    // not found after an insert failed on the hash, it is taken by a different long url, which this one
+                    // then isn't deduplicated with
+                    Long hash = hashTaken.get() ? null : longUrlHash;
+                    return generate().flatMap(shortUrl -> reactiveUrlRepository.save(
+                                             hash != null ? new Url(shortUrl, longUrl, hash)
+                                                          : new Url(shortUrl, longUrl, statsOptOut, expiresAtMillis)))
+                                     .flatMap(url -> Mono.fromRunnable(() -> urlReaper.purgeStale(List.of(url)))
+                                                         .subscribeOn(Schedulers.boundedElastic())
+                                                         .thenReturn(url))
+                                     .doOnNext(url -> {
+                                         // drop any cached miss for the new short url
+                                         reactiveUrlCache.invalidate(url.getShortUrl());
+                                         shortUrlFilter.put(url.getShortUrl());
+                                         longUrlIndex.put(url);
+                                     });
+                }))
+                // checked again after a failed insert, which may have lost a race with a create of the same long url
+                .retryWhen(Retry.max(MAX_ATTEMPTS - 1)
+                                .filter(DataIntegrityViolationException.class::isInstance)
+                                .doBeforeRetry(signal -> {
+                                    if (LongUrlIndex.isHashTaken(signal.failure())) {
+                                        hashTaken.set(true);
+                                    }
+                                    meterRegistry.counter("tinyurl.create.collisions").increment();
+                                }))
+                .map(url -> URL_PREFIX + url.getShortUrl())
+                .onErrorMap(ex -> !(ex instanceof ResponseStatusException), ex -> {
+                    if (Exceptions.isRetryExhausted(ex)) {
+                        meterRegistry.counter("tinyurl.create.collisions").increment();
+                        meterRegistry.counter("tinyurl.create.conflicts").increment();
+                        return new ResponseStatusException(HttpStatus.CONFLICT, CREATE_CONFLICT_MSG);
+                    }
+                    log.error("Failed creating short url.", ex);
+                    return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, CREATE_UNAVAILABLE_MSG);
+                });
+    }
+
+    private Mono<Url> existing(String longUrl, Long longUrlHash) {
+        if (longUrlHash == null) {
+            return Mono.empty();
+        }
+        return Mono.fromCallable(() -> longUrlIndex.find(longUrl))
+                   .subscribeOn(Schedulers.boundedElastic())
+                   .flatMap(existing -> existing.map(Mono::just).orElseGet(Mono::empty))
+                   .doOnNext(existing -> meterRegistry.counter("tinyurl.create.deduplicated").increment());
+    }
+
+    /**
+     * Generators may reserve short url blocks in the database, so this runs off the event loop.
+     */
+    private Mono<String> generate() {
+        return Mono.fromCallable(() -> shortUrlFilter.generate(randomUrl)).subscribeOn(Schedulers.boundedElastic());
+    }
+}
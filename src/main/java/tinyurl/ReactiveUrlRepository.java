@@ -0,0 +1,102 @@
+package tinyurl;
+
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+import tinyurl.shard.ShardRouter;
+
+/**
+ * Non-blocking equivalents of the {@link UrlRepository}, {@link UrlStatRepository} and {@link UrlStatRollupRepository}
+ * queries the reactive controllers need, over R2DBC on {@code spring.r2dbc.url}. That is a single database holding the
+ * urls and the stats tables, so shards, replicas and a separate stats database are not supported.
+ */
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUrlRepository {
+    private static final String FIND_SQL = "SELECT id, short_url, long_url, stats_opt_out, long_url_hash, expires_at_millis, "
+            + "last_access_millis FROM urls "
+            + "WHERE short_url=:shortUrl";
+    private static final String INSERT_SQL = "INSERT INTO urls (id, short_url, short_key, long_url, stats_opt_out, long_url_hash, "
+            + "expires_at_millis) VALUES (:id, :shortUrl, :shortKey, :longUrl, :statsOptOut, :longUrlHash, :expiresAtMillis)";
+    private static final String DELETE_SQL = "DELETE FROM urls WHERE short_url=:shortUrl";
+    private static final String DELETE_SOFTLY_SQL = "UPDATE urls SET expires_at_millis=:millis, long_url_hash=NULL "
+            + "WHERE short_url=:shortUrl AND (expires_at_millis IS NULL OR expires_at_millis>:millis)";
+    private static final String COUNT_SQL = "SELECT count(*) FROM url_stats WHERE url_id=:urlId AND timestamp_millis>:timestampMillis";
+    private static final String SUM_SINCE_SQL = "SELECT COALESCE(SUM(click_count), 0) FROM url_stat_rollups "
+            + "WHERE url_id=:urlId AND bucket_start_millis>=:bucketStartMillis";
+    private static final String TOTAL_SQL = "SELECT COALESCE(SUM(click_count), 0) FROM url_stat_rollups "
+            + "WHERE url_id=:urlId AND bucket_start_millis=-1";
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Autowired
+    public ReactiveUrlRepository(ShardRouter shardRouter) {
+        if (shardRouter.isSharded()) {
+            throw new IllegalStateException("The reactive stack serves a single database, tinyurl.shards.count must be 1.");
+        }
+    }
+
+    public Mono<Url> findByShortUrl(String shortUrl) {
+        return databaseClient.sql(FIND_SQL)
+                             .bind("shortUrl", shortUrl)
+                             .map(ReactiveUrlRepository::url)
+                             .one();
+    }
+
+    /**
+     * Fails with a {@link org.springframework.dao.DataIntegrityViolationException} if the short url or long url hash is
+     * taken.
+     */
+    public Mono<Url> save(Url url) {
+        DatabaseClient.GenericExecuteSpec insert = databaseClient.sql(INSERT_SQL)
+                                                                 .bind("id", url.getId())
+                                                                 .bind("shortUrl", url.getShortUrl())
+                                                                 .bind("shortKey", url.getShortKey())
+                                                                 .bind("longUrl", url.getLongUrl())
+                                                                 .bind("statsOptOut", url.isStatsOptOut());
+        insert = url.getLongUrlHash() != null ? insert.bind("longUrlHash", url.getLongUrlHash())
+                                              : insert.bindNull("longUrlHash", Long.class);
+        insert = url.getExpiresAtMillis() != null ? insert.bind("expiresAtMillis", url.getExpiresAtMillis())
+                                                  : insert.bindNull("expiresAtMillis", Long.class);
+        return insert.then().thenReturn(url);
+    }
+
+    public Mono<Long> deleteByShortUrl(String shortUrl) {
+        return databaseClient.sql(DELETE_SQL).bind("shortUrl", shortUrl).fetch().rowsUpdated();
+    }
+
+    /**
+     * See {@link UrlRepository#deleteSoftly(String, long)}.
+     */
+    public Mono<Long> deleteSoftly(String shortUrl, long millis) {
+        return databaseClient.sql(DELETE_SOFTLY_SQL).bind("shortUrl", shortUrl).bind("millis", millis).fetch().rowsUpdated();
+    }
+
+    public Mono<Long> countBy(long urlId, long timestampMillis) {
+        return count(databaseClient.sql(COUNT_SQL).bind("urlId", urlId).bind("timestampMillis", timestampMillis));
+    }
+
+    /**
+     * Rollup equivalent of {@link #countBy(long, long)}, see {@link UrlStatRollupRepository#countBy(long, long)}.
+     */
+    public Mono<Long> countRollupsBy(long urlId, long timestampMillis) {
+        return timestampMillis <= 0
+                ? count(databaseClient.sql(TOTAL_SQL).bind("urlId", urlId))
+                : count(databaseClient.sql(SUM_SINCE_SQL).bind("urlId", urlId)
+                                      .bind("bucketStartMillis", UrlStatRollup.bucketStart(timestampMillis)));
+    }
+
+    private static Mono<Long> count(DatabaseClient.GenericExecuteSpec query) {
+        // drivers return count(*) and SUM as different number types
+        return query.map(row -> row.get(0, Number.class).longValue()).one();
+    }
+
+    private static Url url(Readable row) {
+        return new Url(row.get("id", Long.class), row.get("short_url", String.class), row.get("long_url", String.class),
+                       Boolean.TRUE.equals(row.get("stats_opt_out", Boolean.class)), row.get("long_url_hash", Long.class),
+                       row.get("expires_at_millis", Long.class), row.get("last_access_millis", Long.class));
+    }
+}
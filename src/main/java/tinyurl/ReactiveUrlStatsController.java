@@ -0,0 +1,101 @@
+package tinyurl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import tinyurl.clicks.ClickWriter;
+import tinyurl.random.ShortUrlCodec;
+
+import java.time.Clock;
+import java.util.List;
+
+/**
+ * {@link UrlStatsController} on WebFlux, for the reactive profile. The window counts are concurrent non-blocking queries
+ * through {@link ReactiveUrlRepository}, so no thread waits on them. With the log backend they are read from the local
+ * {@link tinyurl.clicks.ClickLog} instead.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUrlStatsController {
+    private static final Logger log = LogManager.getLogger();
+    private static final String ERROR_MSG = "Unable to get url stats, please try again later.";
+    private static final String NOT_FOUND_MSG = "No stats available for the short url";
+    private static final String TOP_LINKS_DISABLED_MSG = "Top links are not enabled.";
+    @Autowired
+    private ReactiveUrlRepository reactiveUrlRepository;
+    @Autowired
+    private ReactiveUrlCache reactiveUrlCache;
+    @Autowired
+    private ClickWriter clickWriter;
+    @Autowired
+    private ClickSketches clickSketches;
+    @Autowired
+    private ShortUrlFilter shortUrlFilter;
+    @Autowired
+    private Clock clock;
+    @Value("${tinyurl.stats.backend:jdbc}")
+    private String statsBackend;
+    @Value("${tinyurl.stats.rollups.enabled:false}")
+    private boolean rollupsEnabled;
+
+    @GetMapping("/urlStats/{shortUrl}")
+    public Mono<List<WindowStat>> urlStats(@PathVariable String shortUrl) {
+        if (!ShortUrlCodec.isValid(shortUrl) || !shortUrlFilter.mightExist(shortUrl)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG));
+        }
+        long currentMillis = clock.millis();
+        return reactiveUrlCache.findByShortUrl(shortUrl)
+                               .onErrorMap(ex -> {
+                                   log.error("Failed fetching url by short url.", ex);
+                                   return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ERROR_MSG);
+                               })
+                               .map(optUrl -> optUrl.filter(url -> !url.isExpired(currentMillis))
+                                                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG)))
+                               .flatMap(url -> Flux.fromArray(WindowStat.Window.values())
+                                                   .flatMapSequential(window -> countBy(url.getId(), window.getQueryTimestamp(currentMillis))
+                                                           .map(count -> new WindowStat(window, count, uniqueVisitors(url, window, currentMillis))))
+                                                   .collectList()
+                                                   .onErrorMap(ex -> {
+                                                       log.error("Failed fetching stats for url.", ex);
+                                                       return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ERROR_MSG);
+                                                   }));
+    }
+
+    @GetMapping("/topLinks")
+    public List<ClickSketches.TopLink> topLinks(@RequestParam(defaultValue = "DAY") WindowStat.Window window,
+                                               @RequestParam(defaultValue = "10") int limit) {
+        if (!clickSketches.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, TOP_LINKS_DISABLED_MSG);
+        }
+        if (limit < 1 || limit > clickSketches.getTopK()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                              "Limit must be between 1 and " + clickSketches.getTopK() + ".");
+        }
+        return clickSketches.topLinks(window.getQueryTimestamp(clock.millis()), limit);
+    }
+
+    private Mono<Long> countBy(long urlId, long timestampMillis) {
+        if (!"jdbc".equals(statsBackend)) {
+            // the click log counts by scanning mapped segments, blocking work
+            return Mono.fromSupplier(() -> clickWriter.countBy(urlId, timestampMillis)).subscribeOn(Schedulers.boundedElastic());
+        }
+        return rollupsEnabled ? reactiveUrlRepository.countRollupsBy(urlId, timestampMillis)
+                              : reactiveUrlRepository.countBy(urlId, timestampMillis);
+    }
+
+    private Long uniqueVisitors(Url url, WindowStat.Window window, long currentMillis) {
+        return clickSketches.isEnabled() ? clickSketches.uniqueVisitors(url.getId(), window.getQueryTimestamp(currentMillis))
+                                         : null;
+    }
+}
@@ -0,0 +1,246 @@
+package tinyurl;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import tinyurl.random.RandomUrl;
+import tinyurl.shard.ShardRouter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static tinyurl.UrlController.MAX_ATTEMPTS;
+
+/**
+ * A {@link BloomFilter} of every short url, when {@code tinyurl.filter.enabled} is set. Redirects and stats answer 404
+ * for short urls it doesn't contain without a database lookup, and creates skip generated short urls it does contain
+ * instead of failing their insert.
+ * <p>
+ * Loaded at startup from the urls of every shard, or from {@code tinyurl.filter.file} and the urls created since it was
+ * written. Urls created on other nodes are picked up every {@code refresh-interval}, like a cached miss they can 404 here
+ * until then. Ids are random, so new urls are found by their {@code created_at}, rescanning {@code refresh-overlap}
+ * before the newest url seen for inserts that commit late. Deleted urls stay in the filter, costing a lookup, until it
+ * is rebuilt every {@code rebuild-interval}. Until it is loaded every short url might exist.
+ */
+@Component
+public class ShortUrlFilter implements ApplicationRunner {
+    private static final int FILE_MAGIC = 0x7572_6c67;
+    // before any row, and within the range of a MySQL TIMESTAMP in any time zone
+    private static final long START_MILLIS = Duration.ofDays(1).toMillis();
+    private static final Logger log = LogManager.getLogger();
+    @Autowired
+    private UrlRepository urlRepository;
+    @Autowired
+    private ShardRouter shardRouter;
+    @Value("${tinyurl.filter.enabled:false}")
+    private boolean enabled;
+    @Value("${tinyurl.filter.expected-urls:10000000}")
+    private long expectedUrls;
+    @Value("${tinyurl.filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+    @Value("${tinyurl.filter.file:}")
+    private String file;
+    @Value("${tinyurl.filter.batch-size:10000}")
+    private int batchSize;
+    @Value("${tinyurl.filter.refresh-overlap:PT1M}")
+    private Duration refreshOverlap;
+    private volatile BloomFilter filter;
+    // urls created while a rebuild is scanning go into both filters
+    private volatile BloomFilter next;
+    // per shard, when the newest url scanned was created
+    private long[] createdMillis;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            load();
+        }
+    }
+
+    public boolean isLoaded() {
+        return filter != null;
+    }
+
+    /**
+     * False only for short urls that certainly don't exist.
+     */
+    public boolean mightExist(String shortUrl) {
+        BloomFilter current = filter;
+        return current == null || current.mightContain(shortUrl);
+    }
+
+    public void put(String shortUrl) {
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(shortUrl);
+        }
+        BloomFilter building = next;
+        if (building != null) {
+            building.put(shortUrl);
+        }
+    }
+
+    /**
+     * A short url from the generator that isn't taken as far as the filter knows, or the last one tried.
+     */
+    public String generate(RandomUrl randomUrl) {
+        BloomFilter current = filter;
+        String shortUrl = randomUrl.generate();
+        for (int attempt = 1; current != null && attempt < MAX_ATTEMPTS && current.mightContain(shortUrl); attempt++) {
+            shortUrl = randomUrl.generate();
+        }
+        return shortUrl;
+    }
+
+    public synchronized void load() {
+        if (!file.isEmpty() && Files.exists(Path.of(file))) {
+            try {
+                read(Path.of(file));
+                long added = refresh();
+                log.info("Loaded the short url filter from {} and {} urls created since.", file, added);
+                return;
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Failed loading the short url filter from {}, rebuilding it.", file, ex);
+            }
+        }
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${tinyurl.filter.refresh-interval:PT10S}")
+    public void scheduledRefresh() {
+        if (!enabled || filter == null) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (Exception ex) {
+            log.error("Failed refreshing the short url filter.", ex);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tinyurl.filter.rebuild-interval:PT6H}",
+               initialDelayString = "${tinyurl.filter.rebuild-interval:PT6H}")
+    public void scheduledRebuild() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (Exception ex) {
+            log.error("Failed rebuilding the short url filter.", ex);
+        }
+    }
+
+    /**
+     * Adds the urls created since the last scan. Returns the number added.
+     */
+    public synchronized long refresh() {
+        return scan(filter, createdMillis, refreshOverlap.toMillis());
+    }
+
+    /**
+     * Replaces the filter with one of the urls that exist now, sized for twice as many as the current one holds.
+     */
+    public synchronized void rebuild() {
+        BloomFilter current = filter;
+        long expected = Math.max(expectedUrls, current != null ? current.added() * 2 : 0);
+        BloomFilter rebuilt = BloomFilter.create(expected, falsePositiveRate);
+        long[] millis = new long[Math.max(shardRouter.count(), shardRouter.previousCount())];
+        Arrays.fill(millis, START_MILLIS);
+        next = rebuilt;
+        try {
+            long added = scan(rebuilt, millis, 0);
+            filter = rebuilt;
+            createdMillis = millis;
+            log.info("Built the short url filter of {} urls.", added);
+        } finally {
+            next = null;
+        }
+        save();
+    }
+
+    @PreDestroy
+    public synchronized void save() {
+        if (file.isEmpty() || filter == null) {
+            return;
+        }
+        Path path = Path.of(file);
+        Path tmp = Path.of(file + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(createdMillis.length);
+                for (long millis : createdMillis) {
+                    out.writeLong(millis);
+                }
+                filter.writeTo(out);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.error("Failed saving the short url filter to {}.", file, ex);
+        }
+    }
+
+    private void read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Not a short url filter file.");
+            }
+            long[] millis = new long[in.readInt()];
+            for (int i = 0; i < millis.length; i++) {
+                millis[i] = in.readLong();
+            }
+            // shards added since the file was written are scanned from the start
+            createdMillis = new long[Math.max(millis.length, Math.max(shardRouter.count(), shardRouter.previousCount()))];
+            Arrays.fill(createdMillis, START_MILLIS);
+            System.arraycopy(millis, 0, createdMillis, 0, millis.length);
+            filter = BloomFilter.readFrom(in);
+        }
+    }
+
+    /**
+     * Adds the urls of each shard created from {@code overlapMillis} before its entry in {@code millis} on, and moves
+     * the entries up to the newest url. Returns the number of urls not in the filter before.
+     */
+    private long scan(BloomFilter target, long[] millis, long overlapMillis) {
+        long added = 0;
+        for (int shard = 0; shard < millis.length; shard++) {
+            int current = shard;
+            Timestamp createdAt = new Timestamp(Math.max(START_MILLIS, millis[shard] - overlapMillis));
+            long id = 0;
+            List<UrlRepository.ShortUrlRow> rows;
+            do {
+                Timestamp afterCreatedAt = createdAt;
+                long afterId = id;
+                rows = ShardRouter.onShard(current, () -> urlRepository.findShortUrlsCreatedAfter(afterCreatedAt, afterId, batchSize));
+                for (UrlRepository.ShortUrlRow row : rows) {
+                    // urls in the overlap are seen again, added once
+                    if (!target.mightContain(row.getShortUrl())) {
+                        target.put(row.getShortUrl());
+                        added++;
+                    }
+                    createdAt = row.getCreatedAt();
+                    id = row.getId();
+                }
+            } while (rows.size() == batchSize);
+            millis[shard] = Math.max(millis[shard], createdAt.getTime());
+        }
+        return added;
+    }
+}
@@ -0,0 +1,100 @@
+package tinyurl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.lang.NonNull;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into one, the first caller runs the call and the others wait for its
+ * result or exception. With a memo ttl, results are also reused for that long after they complete.
+ * <p>
+ * Exports the tinyurl.single-flight.in-flight gauge and the tinyurl.single-flight.calls counter, tagged with the name
+ * and whether a call was run, shared with an in-flight call or memoized.
+ */
+public class SingleFlight<K, V> implements MeterBinder {
+    private final String name;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Cache<K, V> memo;
+    private Counter run;
+    private Counter shared;
+    private Counter memoized;
+
+    public SingleFlight(String name, Duration memoTtl, long memoSize) {
+        this.name = name;
+        this.memo = memoTtl.isZero() ? null : Caffeine.newBuilder().expireAfterWrite(memoTtl).maximumSize(memoSize).build();
+    }
+
+    public V call(K key, Supplier<V> call) {
+        if (memo != null) {
+            V value = memo.getIfPresent(key);
+            if (value != null) {
+                increment(memoized);
+                return value;
+            }
+        }
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            increment(shared);
+            return join(existing);
+        }
+        increment(run);
+        try {
+            V value = call.get();
+            if (memo != null) {
+                // memoized before the flight lands, so no caller in between runs the call again
+                memo.put(key, value);
+            }
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("tinyurl.single-flight.in-flight", inFlight, Map::size).tag("name", name).register(registry);
+        run = registry.counter("tinyurl.single-flight.calls", "name", name, "result", "run");
+        shared = registry.counter("tinyurl.single-flight.calls", "name", name, "result", "shared");
+        memoized = registry.counter("tinyurl.single-flight.calls", "name", name, "result", "memoized");
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (ex.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package tinyurl;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * Time ordered 64 bit ids generated without coordination: 41 bits of milliseconds since 2024, 10 bits of node id and a
+ * 12 bit sequence within the millisecond. Unique as long as every node has its own node id.
+ * <p>
+ * If the clock moves back, ids go on with the sequence of the last millisecond used, so they never repeat. Once its 4096
+ * ids are used up, generating waits for the clock to pass that millisecond, and fails instead when the clock is more
+ * than {@link #MAX_WAIT_MILLIS} behind it, rather than holding every caller for as long as the clock is back.
+ */
+final class SnowflakeIds {
+    static final long EPOCH_MILLIS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    static final long MAX_WAIT_MILLIS = 100;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private final long nodeBits;
+    private final Clock clock;
+    private long lastMillis = -1;
+    private long sequence;
+
+    SnowflakeIds(long nodeId, Clock clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeBits = nodeId << SEQUENCE_BITS;
+        this.clock = clock;
+    }
+
+    /**
+     * Fills {@code ids} with {@code size} increasing ids, or fails with an {@link IllegalStateException} when that means
+     * waiting for a clock that moved back.
+     */
+    synchronized void next(long[] ids, int size) {
+        for (int i = 0; i < size; i++) {
+            long millis = clock.millis();
+            if (millis > lastMillis) {
+                lastMillis = millis;
+                sequence = 0;
+            } else if (sequence < MAX_SEQUENCE) {
+                sequence++;
+            } else {
+                while ((millis = clock.millis()) <= lastMillis) {
+                    if (lastMillis - millis > MAX_WAIT_MILLIS) {
+                        throw new IllegalStateException("Clock moved back " + (lastMillis - millis)
+                                                        + "ms, snowflake ids of the last millisecond are used up.");
+                    }
+                    Thread.onSpinWait();
+                }
+                lastMillis = millis;
+                sequence = 0;
+            }
+            ids[i] = ((lastMillis - EPOCH_MILLIS) << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | sequence;
+        }
+    }
+
+    long next() {
+        long[] ids = new long[1];
+        next(ids, 1);
+        return ids[0];
+    }
+}
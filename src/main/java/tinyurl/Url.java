@@ -3,44 +3,144 @@ package tinyurl;
 import jakarta.annotation.Nonnull;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import jakarta.persistence.UniqueConstraint;
 import org.hibernate.annotations.Immutable;
 import org.springframework.lang.NonNull;
+import tinyurl.random.ShortUrlCodec;
+
+import java.sql.Timestamp;
 
 
 @Immutable
 @Entity
-@Table(name = "urls", uniqueConstraints = {@UniqueConstraint(columnNames = {"short_url"})})
+@Table(name = "urls", uniqueConstraints = {@UniqueConstraint(columnNames = {"short_url"}),
+        @UniqueConstraint(columnNames = {"short_key"}),
+        @UniqueConstraint(name = Url.LONG_URL_HASH_KEY, columnNames = {"long_url_hash"})},
+        indexes = @Index(columnList = "created_at"))
 public class Url {
+    /**
+     * Ids are the short key plus this offset, above the ids the table used to auto increment. A url's id is then known
+     * before it is inserted and is unique across shards without coordination. A url created with the short url of a
+     * deleted one gets its id too, so creates purge anything left under the id, see {@link UrlReaper#purgeStale}.
+     */
+    static final long ID_OFFSET = 1L << 40;
+
+    /**
+     * Named so a violation of it can be told from a short url collision, see
+     * {@link LongUrlIndex#isHashTaken(Throwable)}.
+     */
+    static final String LONG_URL_HASH_KEY = "uk_urls_long_url_hash";
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
 
     @Nonnull
     @Column(name = "short_url")
     private String shortUrl;
 
+    /**
+     * The short url packed into a number by {@link ShortUrlCodec}. Null only on rows created before the column existed
+     * and not backfilled yet, or with a short url outside the codec's alphabet.
+     */
+    @Column(name = "short_key")
+    private Long shortKey;
+
     @NonNull
     @Column(name = "long_url")
     private String longUrl;
 
+    /**
+     * Set when the owner opted out of per-click stats, the redirect is then permanent and cacheable by clients.
+     */
+    @Column(name = "stats_opt_out", columnDefinition = "boolean default false not null")
+    private boolean statsOptOut;
+
+    /**
+     * {@link LongUrlIndex#hash(String)} of the long url, set only on urls created with deduplication enabled. Unique, so
+     * concurrent creates of the same long url leave a single row.
+     */
+    @Column(name = "long_url_hash")
+    private Long longUrlHash;
+
+    /**
+     * When the url stops redirecting and can be reaped, null for urls that never expire.
+     */
+    @Column(name = "expires_at_millis")
+    private Long expiresAtMillis;
+
+    /**
+     * Roughly the last redirect, kept to {@code tinyurl.reaper.access-resolution} by {@link UrlReaper}. Null until the
+     * first redirect or reaper run after the url was created.
+     */
+    @Column(name = "last_access_millis")
+    private Long lastAccessMillis;
+
+    /**
+     * When the row was inserted, by the clock of its database. Ids follow the short url rather than creation order, so
+     * {@link ShortUrlFilter} finds the urls created since its last scan by this.
+     */
+    @Column(name = "created_at", insertable = false, updatable = false,
+            columnDefinition = "timestamp(3) default current_timestamp(3) not null")
+    private Timestamp createdAt;
+
+    @Transient
+    private String location;
+
+    @Transient
+    private String etag;
+
     public Url() {
     }
 
     public Url(long id, String shortUrl, String longUrl) {
+        this(shortUrl, longUrl);
         this.id = id;
-        this.shortUrl = shortUrl;
-        this.longUrl = longUrl;
     }
 
     public Url(String shortUrl, String longUrl) {
         this.shortUrl = shortUrl;
+        this.shortKey = shortKey(shortUrl);
         this.longUrl = longUrl;
+        if (shortKey == null) {
+            throw new IllegalArgumentException("Not a valid short url: " + shortUrl);
+        }
+        this.id = ID_OFFSET + shortKey;
+    }
+
+    public Url(String shortUrl, String longUrl, boolean statsOptOut) {
+        this(shortUrl, longUrl);
+        this.statsOptOut = statsOptOut;
+    }
+
+    public Url(String shortUrl, String longUrl, Long longUrlHash) {
+        this(shortUrl, longUrl);
+        this.longUrlHash = longUrlHash;
+    }
+
+    public Url(String shortUrl, String longUrl, boolean statsOptOut, Long expiresAtMillis) {
+        this(shortUrl, longUrl, statsOptOut);
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    /**
+     * A url read outside of JPA, with the id stored on the row rather than the one derived from the short url.
+     */
+    Url(long id, String shortUrl, String longUrl, boolean statsOptOut, Long longUrlHash, Long expiresAtMillis,
+        Long lastAccessMillis) {
+        this(id, shortUrl, longUrl);
+        this.statsOptOut = statsOptOut;
+        this.longUrlHash = longUrlHash;
+        this.expiresAtMillis = expiresAtMillis;
+        this.lastAccessMillis = lastAccessMillis;
+    }
+
+    static Long shortKey(String shortUrl) {
+        long key = ShortUrlCodec.decode(shortUrl);
+        return key >= 0 ? key : null;
     }
 
     public long getId() {
@@ -51,10 +151,54 @@ public class Url {
         return shortUrl;
     }
 
+    public Long getShortKey() {
+        return shortKey;
+    }
+
     public String getLongUrl() {
         return longUrl;
     }
 
+    public Long getLongUrlHash() {
+        return longUrlHash;
+    }
+
+    public boolean isStatsOptOut() {
+        return statsOptOut;
+    }
+
+    public Long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public boolean isExpired(long millis) {
+        return expiresAtMillis != null && expiresAtMillis <= millis;
+    }
+
+    public Long getLastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    /**
+     * The redirect Location, the long url with a scheme added if it has none. Computed once per cached url.
+     */
+    public String getLocation() {
+        if (location == null) {
+            location = longUrl.contains("://") ? longUrl : "http://" + longUrl;
+        }
+        return location;
+    }
+
+    /**
+     * A strong ETag for the redirect, which changes if the short url is deleted and created again for another long url.
+     */
+    public String getEtag() {
+        if (etag == null) {
+            etag = "\"" + shortUrl + "-" + Integer.toHexString(longUrl.hashCode()) + "\"";
+        }
+        return etag;
+    }
+
     @Override
     public String toString() {
         return "Url{id=" + id + ", shortUrl='" + shortUrl + "', longUrl='" + longUrl + "'}";
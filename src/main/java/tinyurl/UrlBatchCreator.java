@@ -0,0 +1,69 @@
+package tinyurl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import tinyurl.random.RandomUrl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static tinyurl.UrlController.MAX_ATTEMPTS;
+
+/**
+ * Creates short urls for a chunk of long urls with one batch insert and one lookup per attempt. Elements whose short url
+ * collided are retried with new short urls, up to {@link UrlController#MAX_ATTEMPTS} times, without failing the others.
+ */
+@Component
+public class UrlBatchCreator {
+    @Autowired
+    private UrlRepository urlRepository;
+    @Autowired
+    private UrlCache urlCache;
+    @Autowired
+    private RandomUrl randomUrl;
+    @Autowired
+    private ShortUrlFilter shortUrlFilter;
+    @Autowired
+    private UrlReaper urlReaper;
+
+    /**
+     * Returns the saved url for each long url, in order, or null where no free short url was found.
+     */
+    public Url[] create(List<String> longUrls) {
+        Url[] created = new Url[longUrls.size()];
+        List<Integer> pending = new ArrayList<>(longUrls.size());
+        for (int i = 0; i < longUrls.size(); i++) {
+            pending.add(i);
+        }
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            Map<String, Integer> indexByShortUrl = new HashMap<>();
+            List<Url> urls = new ArrayList<>(pending.size());
+            for (int index : pending) {
+                String shortUrl = shortUrlFilter.generate(randomUrl);
+                // a short url repeated within the chunk is left for the next attempt
+                if (indexByShortUrl.putIfAbsent(shortUrl, index) == null) {
+                    urls.add(new Url(shortUrl, longUrls.get(index)));
+                }
+            }
+
+            urlRepository.insertBatch(urls);
+            List<Url> createdNow = new ArrayList<>(urls.size());
+            for (Url url : urlRepository.findByShortUrlIn(indexByShortUrl.keySet())) {
+                int index = indexByShortUrl.get(url.getShortUrl());
+                // a different long url means the short url was already taken
+                if (url.getLongUrl().equals(longUrls.get(index))) {
+                    created[index] = url;
+                    createdNow.add(url);
+                    urlCache.invalidate(url.getShortUrl());
+                    shortUrlFilter.put(url.getShortUrl());
+                }
+            }
+            urlReaper.purgeStale(createdNow);
+            pending.removeIf(index -> created[index] != null);
+        }
+        return created;
+    }
+}
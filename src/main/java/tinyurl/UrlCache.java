@@ -0,0 +1,222 @@
+package tinyurl;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache in front of {@link UrlRepository#findByShortUrl(String)}, or {@link UrlLookup} with
+ * {@code tinyurl.cache.jdbc-lookups}.
+ * Misses are cached as well, with a shorter ttl, so unknown short urls don't reach the database on every request.
+ * <p>
+ * With {@code tinyurl.cache.snapshot.file}, the hottest urls are saved to a {@link UrlSnapshot} periodically and on
+ * shutdown, and loaded into the cache before the server takes requests, with ttls spread over the second half of the
+ * ttl so they don't all reload at once. While lookups fail, urls in the last snapshot are served from it. Expired and
+ * tombstoned urls are left out of snapshots, and invalidated urls are dropped from the last one.
+ */
+@Component
+public class UrlCache implements MeterBinder {
+    private static final Logger log = LogManager.getLogger();
+    private final LoadingCache<String, Optional<Url>> cache;
+    private final UrlRepository urlRepository;
+    private final Clock clock;
+    private final Duration ttl;
+    private final Path snapshotFile;
+    private final int snapshotSize;
+    private final boolean staleReads;
+    private final AtomicLong staleReadCount = new AtomicLong();
+    private volatile Map<String, Url> snapshot = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UrlCache(UrlRepository urlRepository,
+                    ObjectProvider<UrlLookup> urlLookup,
+                    ObjectProvider<Clock> clock,
+                    @Value("${tinyurl.cache.max-size:100000}") long maxSize,
+                    @Value("${tinyurl.cache.ttl:PT10M}") Duration ttl,
+                    @Value("${tinyurl.cache.negative-ttl:PT30S}") Duration negativeTtl,
+                    @Value("${tinyurl.short-url.key-lookups:false}") boolean keyLookups,
+                    @Value("${tinyurl.cache.jdbc-lookups:false}") boolean jdbcLookups,
+                    @Value("${tinyurl.cache.snapshot.file:}") String snapshotFile,
+                    @Value("${tinyurl.cache.snapshot.size:10000}") int snapshotSize,
+                    @Value("${tinyurl.cache.snapshot.stale-reads:true}") boolean staleReads) {
+        this.urlRepository = urlRepository;
+        this.clock = clock.getIfAvailable(Clock::systemUTC);
+        this.ttl = ttl;
+        this.snapshotFile = snapshotFile.isEmpty() ? null : Path.of(snapshotFile);
+        this.snapshotSize = snapshotSize;
+        this.staleReads = staleReads;
+        this.cache = Caffeine.newBuilder()
+                             .maximumSize(maxSize)
+                             .expireAfter(new UrlExpiry(ttl.toNanos(), negativeTtl.toNanos()))
+                             .recordStats()
+                             .build(jdbcLookups ? loader(urlLookup.getObject(), keyLookups) : loader(urlRepository, keyLookups));
+    }
+
+    private static CacheLoader<String, Optional<Url>> loader(UrlRepository urlRepository, boolean keyLookups) {
+        return shortUrl -> {
+            Long shortKey = keyLookups ? Url.shortKey(shortUrl) : null;
+            return shortKey != null ? urlRepository.findByShortKey(shortKey) : urlRepository.findByShortUrl(shortUrl);
+        };
+    }
+
+    private static CacheLoader<String, Optional<Url>> loader(UrlLookup urlLookup, boolean keyLookups) {
+        return shortUrl -> {
+            Long shortKey = keyLookups ? Url.shortKey(shortUrl) : null;
+            return shortKey != null ? urlLookup.findByShortKey(shortUrl, shortKey) : urlLookup.findByShortUrl(shortUrl);
+        };
+    }
+
+    public Optional<Url> findByShortUrl(String shortUrl) {
+        try {
+            return cache.get(shortUrl);
+        } catch (RuntimeException ex) {
+            Url stale = staleReads ? snapshot.get(shortUrl) : null;
+            if (stale == null) {
+                throw ex;
+            }
+            staleReadCount.incrementAndGet();
+            return Optional.of(stale);
+        }
+    }
+
+    /**
+     * Looks up the short urls, loading the ones not cached with a single query per shard.
+     */
+    public Map<String, Optional<Url>> findAllByShortUrl(Collection<String> shortUrls) {
+        return cache.getAll(shortUrls, missing -> {
+            Map<String, Optional<Url>> loaded = new HashMap<>();
+            missing.forEach(shortUrl -> loaded.put(shortUrl, Optional.empty()));
+            urlRepository.findByShortUrlIn(new ArrayList<>(missing)).forEach(url -> loaded.put(url.getShortUrl(), Optional.of(url)));
+            return loaded;
+        });
+    }
+
+    public void invalidate(String shortUrl) {
+        cache.invalidate(shortUrl);
+        snapshot.remove(shortUrl);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @PostConstruct
+    public void loadSnapshot() {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return;
+        }
+        try {
+            long millis = clock.millis();
+            Map<String, Url> urls = new LinkedHashMap<>();
+            UrlSnapshot.read(snapshotFile).forEach((shortUrl, url) -> {
+                if (!url.isExpired(millis)) {
+                    urls.put(shortUrl, url);
+                }
+            });
+            long ttlNanos = ttl.toNanos();
+            cache.policy().expireVariably().ifPresent(policy -> urls.forEach((shortUrl, url) -> policy.put(
+                    shortUrl, Optional.of(url), ttlNanos / 2 + ThreadLocalRandom.current().nextLong(ttlNanos / 2 + 1),
+                    TimeUnit.NANOSECONDS)));
+            snapshot = new ConcurrentHashMap<>(urls);
+            log.info("Warmed the url cache with {} urls from {}.", urls.size(), snapshotFile);
+        } catch (IOException ex) {
+            log.warn("Failed loading the url snapshot {}, starting cold.", snapshotFile, ex);
+        }
+    }
+
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${tinyurl.cache.snapshot.interval:PT5M}",
+            initialDelayString = "${tinyurl.cache.snapshot.interval:PT5M}")
+    public void saveSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        long millis = clock.millis();
+        Map<String, Url> urls = new LinkedHashMap<>();
+        cache.policy().eviction().ifPresent(policy -> policy.hottest(snapshotSize).forEach((shortUrl, url) -> url
+                .filter(hot -> !hot.isExpired(millis))
+                .ifPresent(hot -> urls.put(shortUrl, hot))));
+        if (urls.isEmpty()) {
+            // keeps the previous snapshot, the cache may have been emptied by lookups failing
+            return;
+        }
+        try {
+            UrlSnapshot.write(snapshotFile, urls.values());
+            snapshot = new ConcurrentHashMap<>(urls);
+        } catch (IOException ex) {
+            log.error("Failed saving the url snapshot to {}.", snapshotFile, ex);
+        }
+    }
+
+    /**
+     * Hit, miss, load and eviction counters accumulated since startup.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Exports the cache stats as the cache.* meters tagged with cache=urls.
+     */
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        new CaffeineCacheMetrics<>(cache, "urls", Tags.empty()).bindTo(registry);
+        FunctionCounter.builder("tinyurl.cache.stale-reads", staleReadCount, AtomicLong::get)
+                       .description("Urls served from the snapshot while lookups failed")
+                       .register(registry);
+    }
+
+    record UrlExpiry(long ttlNanos, long negativeTtlNanos) implements Expiry<String, Optional<Url>> {
+        @Override
+        public long expireAfterCreate(String shortUrl, Optional<Url> url, long currentTime) {
+            return url.isPresent() ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String shortUrl, Optional<Url> url, long currentTime, long currentDuration) {
+            return expireAfterCreate(shortUrl, url, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String shortUrl, Optional<Url> url, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -1,11 +1,25 @@
 package tinyurl;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.micrometer.common.util.StringUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -14,55 +28,152 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import tinyurl.clicks.ClickPipeline;
+import tinyurl.clicks.ClickWriter;
 import tinyurl.random.RandomUrl;
+import tinyurl.random.ShortUrlCodec;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UrlController {
     static final int MAX_ATTEMPTS = 5;
     static final String URL_PREFIX = "http://tinyurl.com/";
+    private static final String NOT_FOUND_MSG = "No url found for the short url provided.";
+    private static final String MISSING_LONG_URL_MSG = "Please provide a long url to be shortened.";
+    private static final String INVALID_EXPIRES_IN_MSG = "Please provide expiresIn as a positive ISO-8601 duration, such as P30D.";
+    private static final String CREATE_UNAVAILABLE_MSG = "Unable to create short url, please try again later.";
+    private static final String CREATE_CONFLICT_MSG = "Failed to create short url, please retry.";
     private static final Logger log = LogManager.getLogger();
     @Autowired
     private UrlRepository urlRepository;
     @Autowired
-    private UrlStatRepository urlStatRepository;
+    private UrlCache urlCache;
+    @Autowired
+    private ClickPipeline clickPipeline;
+    @Autowired
+    private ClickWriter clickWriter;
     @Autowired
     private RandomUrl randomUrl;
     @Autowired
+    private UrlBatchCreator urlBatchCreator;
+    @Autowired
+    private HotKeys hotKeys;
+    @Autowired
+    private LongUrlIndex longUrlIndex;
+    @Autowired
+    private ClickSketches clickSketches;
+    @Autowired
+    private ShortUrlFilter shortUrlFilter;
+    @Autowired
+    private UrlReaper urlReaper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
     private Clock clock;
+    @Value("${tinyurl.batch.chunk-size:500}")
+    private int batchChunkSize;
+    @Value("${tinyurl.redirect.status:OK}")
+    private HttpStatus redirectStatus;
+    @Value("${tinyurl.redirect.cache-control:no-cache}")
+    private String redirectCacheControl;
+    @Value("${tinyurl.redirect.permanent-opt-outs:false}")
+    private boolean permanentOptOuts;
+    @Value("${tinyurl.redirect.opt-out-cache-control:public, max-age=86400}")
+    private String optOutCacheControl;
 
 
+    /**
+     * Redirects with {@code tinyurl.redirect.status} and a Location header, or returns the long url as a plain text body
+     * when the status is OK. Written straight to the response from headers precomputed on the cached url, skipping the
+     * message converters. Urls opted out of click stats get a cacheable 301 instead with
+     * {@code tinyurl.redirect.permanent-opt-outs}.
+     */
     @GetMapping("/url/{shortUrl}")
-    public String redirect(@PathVariable String shortUrl) {
+    public void redirect(@PathVariable String shortUrl, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!ShortUrlCodec.isValid(shortUrl) || !shortUrlFilter.mightExist(shortUrl)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG);
+        }
         Optional<Url> optUrl;
         try {
-            optUrl = urlRepository.findByShortUrl(shortUrl);
+            optUrl = urlCache.findByShortUrl(shortUrl);
         } catch (Exception ex) {
             log.error("Failed fetching url for short url.", ex);
             throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Unable to find long url, please try again later.");
         }
 
-        optUrl.ifPresent(url -> CompletableFuture.runAsync(() -> {
-            try {
-                urlStatRepository.save(new UrlStat(url, clock.millis()));
-            } catch (Exception ex) {
-                log.error("Unable to save url stats.", ex);
-            }
-        }));
+        Url url = optUrl.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG));
+        long millis = clock.millis();
+        if (url.isExpired(millis)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG);
+        }
+        if (!url.isStatsOptOut()) {
+            clickPipeline.record(url.getId(), millis);
+            clickSketches.record(url, request.getRemoteAddr(), request.getHeader(HttpHeaders.USER_AGENT), millis);
+        }
+        hotKeys.record(shortUrl);
+        urlReaper.recordAccess(url, millis);
+        writeRedirect(url, request, response);
+    }
 
-        return optUrl.map(Url::getLongUrl)
-                     .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No url found for the short url provided."));
+    private void writeRedirect(Url url, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean permanent = permanentOptOuts && url.isStatsOptOut();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, permanent ? optOutCacheControl : redirectCacheControl);
+        response.setHeader(HttpHeaders.ETAG, url.getEtag());
+        if (url.getEtag().equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+        HttpStatus status = permanent ? HttpStatus.MOVED_PERMANENTLY : redirectStatus;
+        response.setStatus(status.value());
+        if (status == HttpStatus.OK) {
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write(url.getLongUrl());
+        } else {
+            response.setHeader(HttpHeaders.LOCATION, url.getLocation());
+        }
     }
 
+    /**
+     * Deletes the url and its clicks, or with {@code tinyurl.reaper.soft-deletes} tombstones the url so it stops
+     * redirecting right away and leaves the deletes to {@link UrlReaper}.
+     */
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @DeleteMapping("/url/{shortUrl}")
     public void delete(@PathVariable String shortUrl) {
+        if (!ShortUrlCodec.isValid(shortUrl)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG);
+        }
         try {
-            urlRepository.deleteByShortUrl(shortUrl);
+            // not through the cache, a cached miss would leave the url's clicks behind
+            Optional<Url> url = urlRepository.findByShortUrlOnPrimary(shortUrl);
+            boolean soft = urlReaper.isSoftDeleting();
+            if (soft) {
+                urlRepository.deleteSoftly(shortUrl, clock.millis());
+            } else {
+                urlRepository.deleteByShortUrl(shortUrl);
+            }
+            urlCache.invalidate(shortUrl);
+            url.ifPresent(deleted -> {
+                longUrlIndex.invalidate(deleted);
+                clickSketches.invalidate(deleted);
+                if (!soft) {
+                    clickPipeline.forget(deleted.getId(), clock.millis());
+                    clickWriter.delete(deleted.getId());
+                }
+            });
         } catch (Exception ex) {
             log.error("Failed deleting the short url.", ex);
             throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Unable to delete short url, please try again later.");
@@ -74,22 +185,158 @@ public class UrlController {
     public String create(@RequestBody Map<String, String> body) {
         String longUrl = body.get("longUrl");
         if (StringUtils.isEmpty(longUrl)) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Please provide a long url to be shortened.");
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, MISSING_LONG_URL_MSG);
         }
-        String shortUrl = randomUrl.generate();
+        boolean statsOptOut = "false".equals(body.get("trackClicks"));
+        Long expiresAtMillis = expiresAtMillis(body, clock.millis());
+        // urls opted out of click stats redirect differently and expiring urls go away, so they get short urls of their own
+        Long longUrlHash = longUrlIndex.isEnabled() && !statsOptOut && expiresAtMillis == null
+                ? LongUrlIndex.hash(LongUrlIndex.normalize(longUrl)) : null;
+        String shortUrl = shortUrlFilter.generate(randomUrl);
+        boolean hashTaken = false;
         int attempt = 0;
         while (attempt < MAX_ATTEMPTS) {
             try {
-                return URL_PREFIX + urlRepository.save(new Url(shortUrl, longUrl)).getShortUrl();
+                if (longUrlHash != null) {
+                    // checked again after a failed insert, which may have lost a race with a create of the same long url
+                    Optional<Url> existing = longUrlIndex.find(longUrl);
+                    if (existing.isPresent()) {
+                        meterRegistry.counter("tinyurl.create.deduplicated").increment();
+                        return URL_PREFIX + existing.get().getShortUrl();
+                    }
+                    if (hashTaken) {
+                        // the hash is taken by a different long url, which this one then isn't deduplicated with
+                        longUrlHash = null;
+                    }
+                }
+                Url url = urlRepository.save(longUrlHash != null ? new Url(shortUrl, longUrl, longUrlHash)
+                                                                 : new Url(shortUrl, longUrl, statsOptOut, expiresAtMillis));
+                urlReaper.purgeStale(List.of(url));
+                // drop any cached miss for the new short url
+                urlCache.invalidate(url.getShortUrl());
+                shortUrlFilter.put(url.getShortUrl());
+                longUrlIndex.put(url);
+                return URL_PREFIX + url.getShortUrl();
             } catch (DataIntegrityViolationException ex) {
+                meterRegistry.counter("tinyurl.create.collisions").increment();
+                hashTaken = longUrlHash != null && LongUrlIndex.isHashTaken(ex);
                 attempt++;
-                shortUrl = randomUrl.generate();
+                shortUrl = shortUrlFilter.generate(randomUrl);
             } catch (Exception ex) {
                 log.error("Failed creating short url.", ex);
-                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Unable to create short url, please try again later.");
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, CREATE_UNAVAILABLE_MSG);
+            }
+        }
+
+        meterRegistry.counter("tinyurl.create.conflicts").increment();
+        throw new ResponseStatusException(HttpStatus.CONFLICT, CREATE_CONFLICT_MSG);
+    }
+
+    /**
+     * The expiry of a url created with an {@code expiresIn} ISO-8601 duration such as P30D, or null without one.
+     */
+    static Long expiresAtMillis(Map<String, String> body, long millis) {
+        String expiresIn = body.get("expiresIn");
+        if (expiresIn == null) {
+            return null;
+        }
+        try {
+            Duration duration = Duration.parse(expiresIn);
+            if (!duration.isNegative() && !duration.isZero()) {
+                return Math.addExact(millis, duration.toMillis());
             }
+        } catch (DateTimeParseException | ArithmeticException ex) {
+            // rejected below
         }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, INVALID_EXPIRES_IN_MSG);
+    }
 
-        throw new ResponseStatusException(HttpStatus.CONFLICT, "Failed to create short url, please retry.");
+    /**
+     * Shortens a JSON array or an NDJSON stream of long urls, given as strings or as {"longUrl": ...} objects.
+     * Long urls are saved in chunks and one NDJSON result line per element is streamed back in order, holding either
+     * the short url or the error for that element.
+     */
+    @PostMapping(value = "/url/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public void createBatch(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        JsonGenerator generator = null;
+        try (JsonParser parser = objectMapper.createParser(request.getInputStream())) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            List<String> chunk = new ArrayList<>(batchChunkSize);
+            int index = 0;
+            while (token != null && token != JsonToken.END_ARRAY) {
+                chunk.add(readLongUrl(parser, token));
+                token = parser.nextToken();
+                if (chunk.size() == batchChunkSize || token == null || token == JsonToken.END_ARRAY) {
+                    if (generator == null) {
+                        response.setStatus(HttpStatus.OK.value());
+                        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+                        generator = objectMapper.createGenerator(response.getOutputStream());
+                        generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+                    }
+                    writeBatchResults(generator, chunk, index);
+                    generator.flush();
+                    index += chunk.size();
+                    chunk.clear();
+                }
+            }
+        } catch (JsonProcessingException ex) {
+            if (generator == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Please provide a JSON array or NDJSON stream of long urls.");
+            }
+            generator.writeStartObject();
+            generator.writeStringField("error", "Invalid JSON at offset " + ex.getLocation().getCharOffset() + ", batch stopped.");
+            generator.writeEndObject();
+        } finally {
+            if (generator != null) {
+                generator.close();
+            }
+        }
+    }
+
+    private static String readLongUrl(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        if (token == JsonToken.START_OBJECT) {
+            JsonNode longUrl = parser.<JsonNode>readValueAsTree().get("longUrl");
+            return longUrl != null && longUrl.isTextual() ? longUrl.asText() : null;
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private void writeBatchResults(JsonGenerator generator, List<String> longUrls, int offset) throws IOException {
+        List<String> validLongUrls = longUrls.stream().filter(longUrl -> !StringUtils.isEmpty(longUrl)).toList();
+        Url[] created = null;
+        try {
+            created = urlBatchCreator.create(validLongUrls);
+        } catch (Exception ex) {
+            log.error("Failed creating short urls.", ex);
+        }
+
+        int validIndex = 0;
+        for (int i = 0; i < longUrls.size(); i++) {
+            String longUrl = longUrls.get(i);
+            generator.writeStartObject();
+            generator.writeNumberField("index", offset + i);
+            generator.writeStringField("longUrl", longUrl);
+            if (StringUtils.isEmpty(longUrl)) {
+                generator.writeStringField("error", MISSING_LONG_URL_MSG);
+            } else if (created == null) {
+                validIndex++;
+                generator.writeStringField("error", CREATE_UNAVAILABLE_MSG);
+            } else {
+                Url url = created[validIndex++];
+                if (url != null) {
+                    generator.writeStringField("shortUrl", URL_PREFIX + url.getShortUrl());
+                } else {
+                    generator.writeStringField("error", CREATE_CONFLICT_MSG);
+                }
+            }
+            generator.writeEndObject();
+        }
     }
 }
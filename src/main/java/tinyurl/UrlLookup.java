@@ -0,0 +1,78 @@
+package tinyurl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tinyurl.shard.ShardRouter;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Url lookups for {@link UrlCache} straight over JDBC, used with {@code tinyurl.cache.jdbc-lookups}. Selects only the
+ * columns a cached url needs into a detached {@link Url}, without a transaction or persistence context. Prepared
+ * statements are reused by the driver's statement cache, see the hikari data-source-properties.
+ * <p>
+ * Reads go to the replica, if there is one, and to the url's shard, or its previous and then its new shard while
+ * resharding, as the {@link UrlRepository} reads do.
+ */
+@Component
+public class UrlLookup {
+    private static final String SELECT_SQL = "SELECT id, long_url, stats_opt_out, long_url_hash, expires_at_millis, last_access_millis FROM urls ";
+    private static final String BY_SHORT_URL_SQL = SELECT_SQL + "WHERE short_url=?";
+    private static final String BY_SHORT_KEY_SQL = SELECT_SQL + "WHERE short_key=?";
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+
+    @Autowired
+    public UrlLookup(DataSource dataSource, ShardRouter shardRouter) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.shardRouter = shardRouter;
+    }
+
+    public Optional<Url> findByShortUrl(String shortUrl) {
+        return find(shortUrl, () -> query(BY_SHORT_URL_SQL, shortUrl, shortUrl));
+    }
+
+    public Optional<Url> findByShortKey(String shortUrl, long shortKey) {
+        return find(shortUrl, () -> query(BY_SHORT_KEY_SQL, shortKey, shortUrl));
+    }
+
+    private Optional<Url> find(String shortUrl, Supplier<Optional<Url>> query) {
+        if (!shardRouter.isSharded()) {
+            return readOnly(query);
+        }
+        if (shardRouter.isResharding()) {
+            Optional<Url> url = ShardRouter.onShard(shardRouter.previousShardOf(shortUrl), () -> readOnly(query));
+            if (url.isPresent()) {
+                return url;
+            }
+        }
+        return ShardRouter.onShard(shardRouter.shardOf(shortUrl), () -> readOnly(query));
+    }
+
+    private Optional<Url> query(String sql, Object key, String shortUrl) {
+        RowMapper<Url> rowMapper = (rs, rowNum) -> new Url(rs.getLong(1), shortUrl, rs.getString(2), rs.getBoolean(3),
+                                                           rs.getObject(4, Long.class), rs.getObject(5, Long.class),
+                                                           rs.getObject(6, Long.class));
+        List<Url> urls = jdbcTemplate.query(sql, rowMapper, key);
+        return urls.stream().findFirst();
+    }
+
+    /**
+     * Marks the lookup read-only for {@link DataSourceConfig.ReadOnlyRoutingDataSource} without starting a transaction.
+     */
+    private static <T> T readOnly(Supplier<T> query) {
+        boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try {
+            return query.get();
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package tinyurl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import tinyurl.clicks.ClickWriter;
+import tinyurl.shard.ShardRouter;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deletes expired urls, and with {@code tinyurl.reaper.unused-after} urls not redirected to for that long, along with
+ * their stats. Urls are found by paging through the ids of each shard and deleted one at a time, their clicks first in
+ * statements of {@code stats-chunk-size} rows and the url last, so a run cut short leaves the url for the next one to
+ * find. Statements are paced to stay under {@code max-rows-per-second}, no statement holds locks on many rows, and
+ * replicas keep up. Scheduled runs take a MySQL named lock, so one node reaps at a time and the rate holds for all of
+ * them.
+ * <p>
+ * Redirects only note the short url in memory when its stored last access is older than {@code access-resolution}, the
+ * notes are written in batches every {@code access-flush-interval}.
+ * <p>
+ * With {@code soft-deletes}, DELETE /url only tombstones the url, expiring it right away, and leaves deleting its
+ * row and clicks to the next run.
+ */
+@Component
+public class UrlReaper {
+    private static final String LOCK_NAME = "tinyurl.reaper";
+    private static final Logger log = LogManager.getLogger();
+    private final Set<String> accessed = ConcurrentHashMap.newKeySet();
+    @Autowired
+    private UrlRepository urlRepository;
+    @Autowired
+    private UrlCache urlCache;
+    @Autowired
+    private LongUrlIndex longUrlIndex;
+    @Autowired
+    private ClickSketches clickSketches;
+    @Autowired
+    private ClickWriter clickWriter;
+    @Autowired
+    private ShardRouter shardRouter;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private Clock clock;
+    @Value("${tinyurl.reaper.enabled:false}")
+    private boolean enabled;
+    @Value("${tinyurl.reaper.soft-deletes:false}")
+    private boolean softDeletes;
+    @Value("${tinyurl.reaper.unused-after:P0D}")
+    private Duration unusedAfter;
+    @Value("${tinyurl.reaper.access-resolution:P1D}")
+    private Duration accessResolution;
+    @Value("${tinyurl.reaper.batch-size:100}")
+    private int batchSize;
+    @Value("${tinyurl.reaper.stats-chunk-size:1000}")
+    private int statsChunkSize;
+    @Value("${tinyurl.reaper.max-rows-per-second:5000}")
+    private long maxRowsPerSecond;
+    private long owedRows;
+
+    private boolean isTrackingAccess() {
+        return enabled && !unusedAfter.isZero();
+    }
+
+    public boolean isSoftDeleting() {
+        return enabled && softDeletes;
+    }
+
+    /**
+     * Notes a redirect to the url, unless its last access is recent enough already.
+     */
+    public void recordAccess(Url url, long millis) {
+        if (isTrackingAccess() && (url.getLastAccessMillis() == null
+                || millis - url.getLastAccessMillis() >= accessResolution.toMillis())) {
+            accessed.add(url.getShortUrl());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tinyurl.reaper.access-flush-interval:PT1M}")
+    public void flushAccesses() {
+        long millis = clock.millis();
+        List<String> shortUrls = new ArrayList<>(batchSize);
+        try {
+            Iterator<String> iterator = accessed.iterator();
+            while (iterator.hasNext()) {
+                shortUrls.add(iterator.next());
+                iterator.remove();
+                if (shortUrls.size() == batchSize || !iterator.hasNext()) {
+                    urlRepository.updateLastAccess(shortUrls, millis);
+                    shortUrls = new ArrayList<>(batchSize);
+                }
+            }
+        } catch (Exception ex) {
+            // noted again for the next flush, so the reaper doesn't take them for unused
+            accessed.addAll(shortUrls);
+            log.error("Failed saving url last access times.", ex);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tinyurl.reaper.interval:PT1H}")
+    public void scheduledReap() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (!Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) this::reapLocked))) {
+                log.info("Skipped reaping urls, another node is.");
+            }
+        } catch (Exception ex) {
+            log.error("Failed reaping urls.", ex);
+        }
+    }
+
+    /**
+     * Reaps while holding the named lock on the connection, returns false without reaping if another node holds it.
+     */
+    private boolean reapLocked(Connection connection) throws SQLException {
+        try (PreparedStatement lock = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            lock.setString(1, LOCK_NAME);
+            try (ResultSet rs = lock.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    return false;
+                }
+            }
+        }
+        try {
+            reap();
+            return true;
+        } finally {
+            try (PreparedStatement release = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                release.setString(1, LOCK_NAME);
+                release.execute();
+            }
+        }
+    }
+
+    /**
+     * Deletes the urls expired or unused by now, returns the number of urls deleted.
+     */
+    public synchronized long reap() {
+        long millis = clock.millis();
+        long unusedBeforeMillis = Long.MIN_VALUE;
+        if (isTrackingAccess()) {
+            unusedBeforeMillis = millis - unusedAfter.toMillis();
+            shardRouter.forEachShard(shard -> {
+                long lastId = 0;
+                while ((lastId = urlRepository.fillLastAccess(lastId, millis, batchSize)) >= 0) {
+                    throttle(batchSize);
+                }
+            });
+        }
+        long reaped = 0;
+        for (int shard = 0; shard < Math.max(shardRouter.count(), shardRouter.previousCount()); shard++) {
+            reaped += reap(shard, millis, unusedBeforeMillis);
+        }
+        log.info("Reaped {} urls.", reaped);
+        return reaped;
+    }
+
+    private long reap(int shard, long millis, long unusedBeforeMillis) {
+        long reaped = 0;
+        long lastId = 0;
+        List<Url> urls;
+        while (!(urls = findReapableAfter(shard, lastId, millis, unusedBeforeMillis)).isEmpty()) {
+            for (Url url : urls) {
+                delete(url);
+            }
+            lastId = urls.get(urls.size() - 1).getId();
+            reaped += urls.size();
+        }
+        return reaped;
+    }
+
+    private List<Url> findReapableAfter(int shard, long lastId, long millis, long unusedBeforeMillis) {
+        return ShardRouter.onShard(shard, () -> urlRepository.findReapableAfter(lastId, millis, unusedBeforeMillis, batchSize));
+    }
+
+    /**
+     * Deletes what is left under the ids of urls just created, clicks written after a deleted url with the same short
+     * url was reaped and this node's sketches of it. Logged on failure, the urls are created either way.
+     */
+    public void purgeStale(Collection<Url> urls) {
+        try {
+            clickWriter.purge(urls.stream().map(Url::getId).toList());
+            urls.forEach(clickSketches::invalidate);
+        } catch (Exception ex) {
+            log.error("Failed purging stale clicks of created urls.", ex);
+        }
+    }
+
+    private void delete(Url url) {
+        int deleted;
+        do {
+            deleted = clickWriter.delete(url.getId(), statsChunkSize);
+            throttle(deleted);
+        } while (deleted >= statsChunkSize);
+        urlRepository.deleteByShortUrl(url.getShortUrl());
+        urlCache.invalidate(url.getShortUrl());
+        longUrlIndex.invalidate(url);
+        clickSketches.invalidate(url);
+        throttle(1);
+    }
+
+    /**
+     * Sleeps for as long as writing the rows takes at {@code max-rows-per-second}, carrying over what is too short to
+     * sleep for.
+     */
+    private void throttle(long rows) {
+        owedRows += rows;
+        long sleepMillis = owedRows * 1000 / maxRowsPerSecond;
+        if (sleepMillis == 0) {
+            return;
+        }
+        owedRows -= sleepMillis * maxRowsPerSecond / 1000;
+        try {
+            Thread.sleep(sleepMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted reaping urls.", ex);
+        }
+    }
+}
@@ -5,17 +5,92 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import tinyurl.shard.ShardKey;
 
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UrlRepository extends JpaRepository<Url, Long> {
+public interface UrlRepository extends JpaRepository<Url, Long>, UrlRepositoryCustom {
 
+    @Override
+    <S extends Url> S save(S url);
+
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT * FROM urls WHERE short_url=?", nativeQuery = true)
+    Optional<Url> findByShortUrl(@ShardKey String shortUrl);
+
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT * FROM urls WHERE short_key=?", nativeQuery = true)
+    Optional<Url> findByShortKey(@ShardKey long shortKey);
+
+    /**
+     * Reads the primary, the row may have just been inserted by a concurrent create of the same long url.
+     */
+    @Transactional
+    @Query(value = "SELECT * FROM urls WHERE long_url_hash=?", nativeQuery = true)
+    Optional<Url> findByLongUrlHash(long longUrlHash);
+
+    /**
+     * Reads the primary, for deletes, where a replica lagging behind the create would leave the url's clicks behind.
+     */
+    @Transactional
     @Query(value = "SELECT * FROM urls WHERE short_url=?", nativeQuery = true)
-    Optional<Url> findByShortUrl(String shortUrl);
+    Optional<Url> findByShortUrlOnPrimary(@ShardKey String shortUrl);
 
     @Modifying
     @Transactional
     @Query(value = "DELETE FROM urls WHERE short_url=?", nativeQuery = true)
-    void deleteByShortUrl(String shortUrl);
+    void deleteByShortUrl(@ShardKey String shortUrl);
+
+    /**
+     * Tombstones the url by expiring it at {@code millis}, for {@link UrlReaper} to delete with its stats. Its long url
+     * hash is cleared so the long url can be shortened again meanwhile.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE urls SET expires_at_millis=?2, long_url_hash=NULL WHERE short_url=?1 "
+            + "AND (expires_at_millis IS NULL OR expires_at_millis>?2)", nativeQuery = true)
+    void deleteSoftly(@ShardKey String shortUrl, long millis);
+
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT * FROM urls WHERE short_url IN (?1)", nativeQuery = true)
+    List<Url> findByShortUrlIn(@ShardKey Collection<String> shortUrls);
+
+    /**
+     * Pages through the urls of one shard, the one set with {@link tinyurl.shard.ShardRouter#onShard}.
+     */
+    @Query(value = "SELECT id FROM urls WHERE id>? ORDER BY id LIMIT ?", nativeQuery = true)
+    List<Long> findIdsAfter(long id, int limit);
+
+    /**
+     * Pages through the short urls of one shard in the order they were created, the shard set with
+     * {@link tinyurl.shard.ShardRouter#onShard}. Starts after the url created at {@code createdAt} with {@code id}.
+     */
+    @Query(value = "SELECT id, short_url AS shortUrl, created_at AS createdAt FROM urls "
+            + "WHERE created_at>?1 OR (created_at=?1 AND id>?2) ORDER BY created_at, id LIMIT ?3", nativeQuery = true)
+    List<ShortUrlRow> findShortUrlsCreatedAfter(Timestamp createdAt, long id, int limit);
+
+    /**
+     * Pages through the urls of one shard that expired by {@code millis} or were last redirected to before
+     * {@code unusedBeforeMillis}, for {@link UrlReaper}. Runs on the shard set with {@link tinyurl.shard.ShardRouter#onShard}.
+     */
+    @Query(value = "SELECT * FROM urls WHERE id>?1 AND (expires_at_millis<=?2 OR last_access_millis<?3) ORDER BY id LIMIT ?4",
+            nativeQuery = true)
+    List<Url> findReapableAfter(long id, long millis, long unusedBeforeMillis, int limit);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE urls SET last_access_millis=?2 WHERE short_url IN (?1)", nativeQuery = true)
+    void updateLastAccess(@ShardKey Collection<String> shortUrls, long millis);
+
+    interface ShortUrlRow {
+        long getId();
+
+        String getShortUrl();
+
+        Timestamp getCreatedAt();
+    }
 }
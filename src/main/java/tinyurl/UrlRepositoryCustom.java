@@ -0,0 +1,33 @@
+package tinyurl;
+
+import tinyurl.shard.ShardKey;
+
+import java.util.List;
+
+public interface UrlRepositoryCustom {
+    /**
+     * Inserts the url, failing with a {@link org.springframework.dao.DataIntegrityViolationException} if its short url
+     * exists. Url ids are assigned up front, which would otherwise make the default save merge into an existing row.
+     */
+    <S extends Url> S save(S url);
+
+    /**
+     * Inserts the urls in a JDBC batch. Urls whose short url already exists are skipped instead of failing the batch,
+     * read them back with {@link UrlRepository#findByShortUrlIn(java.util.Collection)} to see which ones were saved.
+     */
+    void insertBatch(@ShardKey List<Url> urls);
+
+    /**
+     * Sets the short key of up to {@code limit} urls with an id after {@code afterId} that have none yet. Returns the
+     * last id looked at, or -1 if there were no such urls. Runs on the shard set with
+     * {@link tinyurl.shard.ShardRouter#onShard}.
+     */
+    long fillShortKeys(long afterId, int limit);
+
+    /**
+     * Sets the last access of up to {@code limit} urls with an id after {@code afterId} that have none yet to
+     * {@code millis}, so unused urls created before access tracking are reaped too. Returns the last id looked at, or -1
+     * if there were no such urls. Runs on the shard set with {@link tinyurl.shard.ShardRouter#onShard}.
+     */
+    long fillLastAccess(long afterId, long millis, int limit);
+}
@@ -0,0 +1,77 @@
+package tinyurl;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+class UrlRepositoryCustomImpl implements UrlRepositoryCustom {
+    private static final String INSERT_SQL = "INSERT INTO urls (id, short_url, short_key, long_url) VALUES (?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE short_url=short_url";
+    private static final String FIND_MISSING_KEYS_SQL = "SELECT id, short_url FROM urls WHERE id>? AND short_key IS NULL "
+            + "ORDER BY id LIMIT ?";
+    private static final String UPDATE_KEY_SQL = "UPDATE urls SET short_key=? WHERE id=?";
+    private static final String FIND_MISSING_ACCESS_SQL = "SELECT id FROM urls WHERE id>? AND last_access_millis IS NULL "
+            + "ORDER BY id LIMIT ?";
+    private static final String UPDATE_ACCESS_SQL = "UPDATE urls SET last_access_millis=? WHERE id=? AND last_access_millis IS NULL";
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public <S extends Url> S save(S url) {
+        entityManager.persist(url);
+        entityManager.flush();
+        return url;
+    }
+
+    @Override
+    public void insertBatch(List<Url> urls) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, urls, urls.size(), (ps, url) -> {
+            ps.setLong(1, url.getId());
+            ps.setString(2, url.getShortUrl());
+            if (url.getShortKey() != null) {
+                ps.setLong(3, url.getShortKey());
+            } else {
+                ps.setNull(3, Types.BIGINT);
+            }
+            ps.setString(4, url.getLongUrl());
+        });
+    }
+
+    @Override
+    @Transactional
+    public long fillShortKeys(long afterId, int limit) {
+        List<Object[]> updates = new ArrayList<>(limit);
+        long[] lastId = new long[]{-1};
+        jdbcTemplate.query(FIND_MISSING_KEYS_SQL, rs -> {
+            lastId[0] = rs.getLong(1);
+            Long shortKey = Url.shortKey(rs.getString(2));
+            if (shortKey != null) {
+                updates.add(new Object[]{shortKey, lastId[0]});
+            }
+        }, afterId, limit);
+        jdbcTemplate.batchUpdate(UPDATE_KEY_SQL, updates);
+        return lastId[0];
+    }
+
+    @Override
+    @Transactional
+    public long fillLastAccess(long afterId, long millis, int limit) {
+        List<Object[]> updates = new ArrayList<>(limit);
+        long[] lastId = new long[]{-1};
+        jdbcTemplate.query(FIND_MISSING_ACCESS_SQL, rs -> {
+            lastId[0] = rs.getLong(1);
+            updates.add(new Object[]{millis, lastId[0]});
+        }, afterId, limit);
+        jdbcTemplate.batchUpdate(UPDATE_ACCESS_SQL, updates);
+        return lastId[0];
+    }
+}
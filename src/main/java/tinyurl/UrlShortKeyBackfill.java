@@ -0,0 +1,45 @@
+package tinyurl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import tinyurl.shard.ShardRouter;
+
+/**
+ * Fills in the short_key column of urls created before it existed. Run it once before enabling
+ * {@code tinyurl.short-url.key-lookups}.
+ */
+@Component
+public class UrlShortKeyBackfill implements ApplicationRunner {
+    private static final Logger log = LogManager.getLogger();
+    @Autowired
+    private UrlRepository urlRepository;
+    @Autowired
+    private ShardRouter shardRouter;
+    @Value("${tinyurl.short-url.backfill-keys-on-startup:false}")
+    private boolean backfillOnStartup;
+    @Value("${tinyurl.short-url.backfill-batch-size:1000}")
+    private int backfillBatchSize;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (backfillOnStartup) {
+            backfill();
+        }
+    }
+
+    public void backfill() {
+        long[] batches = new long[1];
+        shardRouter.forEachShard(shard -> {
+            long lastId = 0;
+            while ((lastId = urlRepository.fillShortKeys(lastId, backfillBatchSize)) >= 0) {
+                batches[0]++;
+            }
+        });
+        log.info("Backfilled short keys in {} batches.", batches[0]);
+    }
+}
@@ -0,0 +1,127 @@
+package tinyurl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A file of urls, hottest first, for warming {@link UrlCache} on startup. A header with a magic number, version and
+ * count, one record per url, and a CRC32 of everything before it. Files of another version or with a bad checksum are
+ * rejected as a whole.
+ */
+final class UrlSnapshot {
+    static final int VERSION = 1;
+    private static final int MAGIC = 0x7572_6c73;
+    private static final int HEADER_BYTES = 12;
+    private static final int CHECKSUM_BYTES = 8;
+    private static final int STATS_OPT_OUT = 1;
+    private static final int HAS_LONG_URL_HASH = 2;
+    private static final int HAS_EXPIRES_AT = 4;
+    private static final int HAS_LAST_ACCESS = 8;
+
+    private UrlSnapshot() {
+    }
+
+    /**
+     * Writes the urls to a temporary file next to the path and moves it in place, so readers never see a partial file.
+     */
+    static void write(Path path, Collection<Url> urls) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            DataOutputStream checked = new DataOutputStream(new CheckedOutputStream(out, crc));
+            checked.writeInt(MAGIC);
+            checked.writeInt(VERSION);
+            checked.writeInt(urls.size());
+            for (Url url : urls) {
+                int flags = (url.isStatsOptOut() ? STATS_OPT_OUT : 0)
+                        | (url.getLongUrlHash() != null ? HAS_LONG_URL_HASH : 0)
+                        | (url.getExpiresAtMillis() != null ? HAS_EXPIRES_AT : 0)
+                        | (url.getLastAccessMillis() != null ? HAS_LAST_ACCESS : 0);
+                checked.writeByte(flags);
+                checked.writeLong(url.getId());
+                writeString(checked, url.getShortUrl());
+                writeString(checked, url.getLongUrl());
+                checked.writeLong(url.getLongUrlHash() != null ? url.getLongUrlHash() : 0);
+                checked.writeLong(url.getExpiresAtMillis() != null ? url.getExpiresAtMillis() : 0);
+                checked.writeLong(url.getLastAccessMillis() != null ? url.getLastAccessMillis() : 0);
+            }
+            checked.flush();
+            out.writeLong(crc.getValue());
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the urls by short url, in the order they were written.
+     */
+    static Map<String, Url> read(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES + CHECKSUM_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a url snapshot file.");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int end = buffer.limit() - CHECKSUM_BYTES;
+        long checksum = buffer.getLong(end);
+        buffer.limit(end);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a url snapshot file of version " + VERSION + ".");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().rewind());
+        if (crc.getValue() != checksum) {
+            throw new IOException("Url snapshot checksum mismatch.");
+        }
+        try {
+            int count = buffer.getInt();
+            Map<String, Url> urls = new LinkedHashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                int flags = buffer.get();
+                long id = buffer.getLong();
+                String shortUrl = readString(buffer);
+                String longUrl = readString(buffer);
+                long longUrlHash = buffer.getLong();
+                long expiresAtMillis = buffer.getLong();
+                long lastAccessMillis = buffer.getLong();
+                urls.put(shortUrl, new Url(id, shortUrl, longUrl, (flags & STATS_OPT_OUT) != 0,
+                                           (flags & HAS_LONG_URL_HASH) != 0 ? longUrlHash : null,
+                                           (flags & HAS_EXPIRES_AT) != 0 ? expiresAtMillis : null,
+                                           (flags & HAS_LAST_ACCESS) != 0 ? lastAccessMillis : null));
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException("Url snapshot has trailing bytes.");
+            }
+            return urls;
+        } catch (BufferUnderflowException | NegativeArraySizeException | IllegalArgumentException ex) {
+            throw new IOException("Corrupt url snapshot.", ex);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
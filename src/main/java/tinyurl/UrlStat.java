@@ -1,18 +1,13 @@
 package tinyurl;
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Index;
-import jakarta.persistence.JoinColumn;
-import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
 import org.hibernate.annotations.Immutable;
-import org.hibernate.annotations.OnDelete;
-import org.hibernate.annotations.OnDeleteAction;
 import org.springframework.lang.NonNull;
 
 
@@ -22,14 +17,11 @@ import org.springframework.lang.NonNull;
 public class UrlStat {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
 
-    @ManyToOne(fetch = FetchType.LAZY, optional = false)
-    @JoinColumn(name = "url_id", nullable = false)
-    @OnDelete(action = OnDeleteAction.CASCADE)
-    @JsonIgnore
-    private Url url;
+    @Column(name = "url_id", nullable = false)
+    private long urlId;
 
     @NonNull
     @Column(name = "timestamp_millis")
@@ -38,13 +30,17 @@ public class UrlStat {
     public UrlStat() {
     }
 
-    UrlStat(Url url, long timestampMillis) {
-        this.url = url;
+    UrlStat(long urlId, long timestampMillis) {
+        this.urlId = urlId;
         this.timestampMillis = timestampMillis;
     }
 
+    long getId() {
+        return id;
+    }
+
     @Override
     public String toString() {
-        return "Url{id=" + id + ", url='" + url + "', timestampMillis='" + timestampMillis + "'}";
+        return "UrlStat{id=" + id + ", urlId=" + urlId + ", timestampMillis='" + timestampMillis + "'}";
     }
 }
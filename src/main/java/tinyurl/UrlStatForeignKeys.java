@@ -0,0 +1,52 @@
+package tinyurl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Drops the foreign keys from url_stats and url_stat_rollups to urls on startup. Databases created while url_id was
+ * mapped as a relation to {@link Url} still have them with ON DELETE CASCADE, and Hibernate's schema update never drops
+ * constraints. With them deleting a url deletes all its clicks in one statement, and MySQL won't partition url_stats.
+ */
+@Component
+public class UrlStatForeignKeys implements ApplicationRunner {
+    static final List<String> TABLES = List.of("url_stats", "url_stat_rollups");
+    // url_id to urls is the only relation these tables ever had
+    private static final String FOREIGN_KEYS_SQL = "SELECT CONSTRAINT_NAME FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS "
+            + "WHERE TABLE_SCHEMA=SCHEMA() AND UPPER(TABLE_NAME)=UPPER(?) AND CONSTRAINT_TYPE='FOREIGN KEY'";
+    private static final Logger log = LogManager.getLogger();
+    @Autowired
+    private JdbcTemplate statsJdbcTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            drop();
+        } catch (Exception ex) {
+            log.error("Failed dropping the foreign keys of the stats tables.", ex);
+        }
+    }
+
+    /**
+     * Returns the number of foreign keys dropped.
+     */
+    public int drop() {
+        int dropped = 0;
+        for (String table : TABLES) {
+            for (String name : statsJdbcTemplate.queryForList(FOREIGN_KEYS_SQL, String.class, table)) {
+                String sql = "ALTER TABLE " + table + " DROP FOREIGN KEY " + name;
+                log.info("Running {}", sql);
+                statsJdbcTemplate.execute(sql);
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+}
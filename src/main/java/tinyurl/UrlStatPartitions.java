@@ -0,0 +1,150 @@
+package tinyurl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps url_stats range partitioned on timestamp_millis, one partition per {@code tinyurl.stats.partitions.period}
+ * (MySQL only). Clicks older than the retention are removed by dropping whole partitions instead of deleting rows, and
+ * the window counts only read the partitions their timestamp range falls in.
+ * <p>
+ * The first run converts an unpartitioned table, which rebuilds it, so enable it at a quiet time. Afterwards each run
+ * adds the partitions for the next {@code ahead} periods and drops the expired ones. Dropped clicks no longer count
+ * towards the ALL window unless it is read from the rollups. Partitions are named after the day they start, so the
+ * period is at least a day. Runs on nodes starting together can clash, the ones failing are logged and retried at the
+ * next maintenance.
+ */
+@Component
+public class UrlStatPartitions implements ApplicationRunner {
+    static final String MAX_PARTITION = "pmax";
+    private static final String PARTITIONS_SQL = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM INFORMATION_SCHEMA.PARTITIONS "
+            + "WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME='url_stats' AND PARTITION_NAME IS NOT NULL";
+    private static final String PRIMARY_KEY_SQL = "ALTER TABLE url_stats DROP PRIMARY KEY, ADD PRIMARY KEY (id, timestamp_millis)";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'p'yyyyMMdd").withZone(ZoneOffset.UTC);
+    private static final Logger log = LogManager.getLogger();
+    @Autowired
+    private JdbcTemplate statsJdbcTemplate;
+    @Autowired
+    private UrlStatForeignKeys urlStatForeignKeys;
+    @Autowired
+    private Clock clock;
+    @Value("${tinyurl.stats.partitions.enabled:false}")
+    private boolean enabled;
+    @Value("${tinyurl.stats.partitions.period:P1D}")
+    private Duration period;
+    @Value("${tinyurl.stats.partitions.ahead:7}")
+    private int ahead;
+    @Value("${tinyurl.stats.partitions.retention:P35D}")
+    private Duration retention;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        if (period.compareTo(Duration.ofDays(1)) < 0) {
+            throw new IllegalStateException("tinyurl.stats.partitions.period must be at least a day, partitions are named "
+                                            + "after the day they start.");
+        }
+        try {
+            maintain();
+        } catch (Exception ex) {
+            log.error("Failed maintaining url_stats partitions.", ex);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tinyurl.stats.partitions.maintenance-interval:PT1H}")
+    public void scheduledMaintain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            maintain();
+        } catch (Exception ex) {
+            log.error("Failed maintaining url_stats partitions.", ex);
+        }
+    }
+
+    public void maintain() {
+        Map<String, Long> existing = new LinkedHashMap<>();
+        statsJdbcTemplate.query(PARTITIONS_SQL, rs -> {
+            String bound = rs.getString(2);
+            existing.put(rs.getString(1), "MAXVALUE".equals(bound) ? Long.MAX_VALUE : Long.parseLong(bound));
+        });
+        if (existing.isEmpty()) {
+            // MySQL won't partition a table with foreign keys
+            urlStatForeignKeys.drop();
+        }
+        for (String sql : statements(existing, clock.millis())) {
+            log.info("Running {}", sql);
+            statsJdbcTemplate.execute(sql);
+        }
+    }
+
+    /**
+     * The DDL bringing the partitions, by name and exclusive upper bound, in line with the current time.
+     */
+    List<String> statements(Map<String, Long> existing, long currentMillis) {
+        long periodMillis = period.toMillis();
+        // keep whatever the longest stats window reads, plus the partition it starts in
+        long retentionMillis = Math.max(retention.toMillis(), UrlStatRollups.RETENTION_MILLIS + periodMillis);
+        long currentStart = currentMillis - Math.floorMod(currentMillis, periodMillis);
+        long lastBound = currentStart + (ahead + 1) * periodMillis;
+        long expiredBound = currentMillis - retentionMillis;
+
+        List<String> statements = new ArrayList<>();
+        if (existing.isEmpty()) {
+            long firstBound = expiredBound - Math.floorMod(expiredBound, periodMillis) + periodMillis;
+            statements.add(PRIMARY_KEY_SQL);
+            statements.add("ALTER TABLE url_stats PARTITION BY RANGE (timestamp_millis) ("
+                           + partitions(firstBound, lastBound, periodMillis) + ")");
+            return statements;
+        }
+
+        long maxBound = existing.values().stream().filter(bound -> bound != Long.MAX_VALUE).mapToLong(Long::longValue)
+                                .max().orElse(currentStart);
+        if (maxBound < lastBound) {
+            statements.add("ALTER TABLE url_stats REORGANIZE PARTITION " + MAX_PARTITION + " INTO ("
+                           + partitions(maxBound + periodMillis, lastBound, periodMillis) + ")");
+        }
+        String expired = existing.entrySet().stream()
+                                 .filter(partition -> partition.getValue() <= expiredBound)
+                                 .map(Map.Entry::getKey)
+                                 .collect(Collectors.joining(", "));
+        if (!expired.isEmpty()) {
+            statements.add("ALTER TABLE url_stats DROP PARTITION " + expired);
+        }
+        return statements;
+    }
+
+    /**
+     * Partitions with upper bounds from {@code fromBound} to {@code toBound}, named after the day they start, and the
+     * catch-all partition for clicks beyond them.
+     */
+    private static String partitions(long fromBound, long toBound, long periodMillis) {
+        StringBuilder sql = new StringBuilder();
+        for (long bound = fromBound; bound <= toBound; bound += periodMillis) {
+            sql.append("PARTITION ").append(NAME_FORMAT.format(Instant.ofEpochMilli(bound - periodMillis)))
+               .append(" VALUES LESS THAN (").append(bound).append("), ");
+        }
+        return sql.append("PARTITION ").append(MAX_PARTITION).append(" VALUES LESS THAN MAXVALUE").toString();
+    }
+}
@@ -1,11 +1,31 @@
 package tinyurl;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
 
 @Repository
-public interface UrlStatRepository extends JpaRepository<UrlStat, Long> {
+public interface UrlStatRepository extends JpaRepository<UrlStat, Long>, UrlStatRepositoryCustom {
+    @Transactional(readOnly = true)
     @Query(value = "SELECT count(*) FROM url_stats WHERE url_id=? AND timestamp_millis>?", nativeQuery = true)
     long countBy(long urlId, long timestampMillis);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM url_stats WHERE url_id=?", nativeQuery = true)
+    int deleteByUrlId(long urlId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM url_stats WHERE url_id=? LIMIT ?", nativeQuery = true)
+    int deleteByUrlId(long urlId, int limit);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM url_stats WHERE url_id IN (?1)", nativeQuery = true)
+    int deleteByUrlIdIn(Collection<Long> urlIds);
 }
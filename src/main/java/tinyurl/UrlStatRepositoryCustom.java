@@ -0,0 +1,20 @@
+package tinyurl;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface UrlStatRepositoryCustom {
+    /**
+     * Inserts one url_stats row, for the url id and timestamp at the same index, for the first {@code size} entries.
+     * All rows are inserted in a single transaction using a JDBC batch.
+     */
+    void insertBatch(long[] urlIds, long[] timestampsMillis, int size);
+
+    void insert(long urlId, long timestampMillis);
+
+    /**
+     * Counts the clicks of each url after each of the timestamps, in one query grouped by url. Urls without clicks are
+     * left out.
+     */
+    Map<Long, long[]> countBy(Collection<Long> urlIds, long[] timestampsMillis);
+}
@@ -0,0 +1,113 @@
+package tinyurl;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inserts clicks with auto increment ids, or with {@link SnowflakeIds} of {@code tinyurl.stats.node-id} when
+ * {@code tinyurl.stats.ids} is snowflake. Snowflake ids need no auto increment lock and are known before the insert,
+ * and being time ordered they still append to the primary key. Every node writing clicks needs its own node id, set
+ * explicitly, startup fails without one.
+ * <p>
+ * Both kinds of ids share the id column, and an auto increment moves past the largest snowflake id inserted, into the
+ * range of snowflake ids still to come. So all nodes switch together, with clicks stopped in between.
+ */
+class UrlStatRepositoryCustomImpl implements UrlStatRepositoryCustom {
+    private static final String INSERT_SQL = "INSERT INTO url_stats (url_id, timestamp_millis) VALUES (?, ?)";
+    private static final String INSERT_WITH_ID_SQL = "INSERT INTO url_stats (url_id, timestamp_millis, id) VALUES (?, ?, ?)";
+    @Autowired
+    private JdbcTemplate statsJdbcTemplate;
+    @Value("${tinyurl.stats.ids:identity}")
+    private String ids;
+    @Value("${tinyurl.stats.node-id:-1}")
+    private long nodeId;
+    private SnowflakeIds snowflakeIds;
+
+    @PostConstruct
+    void init() {
+        if ("snowflake".equals(ids)) {
+            if (nodeId < 0) {
+                throw new IllegalStateException("tinyurl.stats.node-id must be set for snowflake ids.");
+            }
+            snowflakeIds = new SnowflakeIds(nodeId, Clock.systemUTC());
+        }
+    }
+
+    @Override
+    @Transactional(transactionManager = DataSourceConfig.STATS_TRANSACTION_MANAGER)
+    public void insertBatch(long[] urlIds, long[] timestampsMillis, int size) {
+        long[] statIds = null;
+        if (snowflakeIds != null) {
+            statIds = new long[size];
+            snowflakeIds.next(statIds, size);
+        }
+        long[] batchIds = statIds;
+        statsJdbcTemplate.batchUpdate(batchIds != null ? INSERT_WITH_ID_SQL : INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, urlIds[i]);
+                ps.setLong(2, timestampsMillis[i]);
+                if (batchIds != null) {
+                    ps.setLong(3, batchIds[i]);
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return size;
+            }
+        });
+    }
+
+    @Override
+    @Transactional(transactionManager = DataSourceConfig.STATS_TRANSACTION_MANAGER, readOnly = true)
+    public Map<Long, long[]> countBy(Collection<Long> urlIds, long[] timestampsMillis) {
+        Map<Long, long[]> counts = new HashMap<>();
+        if (urlIds.isEmpty()) {
+            return counts;
+        }
+        StringBuilder sql = new StringBuilder("SELECT url_id");
+        List<Object> args = new ArrayList<>(timestampsMillis.length + urlIds.size() + 1);
+        long minMillis = Long.MAX_VALUE;
+        for (long timestampMillis : timestampsMillis) {
+            sql.append(", SUM(CASE WHEN timestamp_millis>? THEN 1 ELSE 0 END)");
+            args.add(timestampMillis);
+            minMillis = Math.min(minMillis, timestampMillis);
+        }
+        sql.append(" FROM url_stats WHERE url_id IN (").append(String.join(", ", Collections.nCopies(urlIds.size(), "?")))
+           .append(") AND timestamp_millis>? GROUP BY url_id");
+        args.addAll(urlIds);
+        args.add(minMillis);
+        statsJdbcTemplate.query(sql.toString(), rs -> {
+            long[] urlCounts = new long[timestampsMillis.length];
+            for (int i = 0; i < urlCounts.length; i++) {
+                urlCounts[i] = rs.getLong(i + 2);
+            }
+            counts.put(rs.getLong(1), urlCounts);
+        }, args.toArray());
+        return counts;
+    }
+
+    @Override
+    public void insert(long urlId, long timestampMillis) {
+        if (snowflakeIds != null) {
+            statsJdbcTemplate.update(INSERT_WITH_ID_SQL, urlId, timestampMillis, snowflakeIds.next());
+        } else {
+            statsJdbcTemplate.update(INSERT_SQL, urlId, timestampMillis);
+        }
+    }
+}
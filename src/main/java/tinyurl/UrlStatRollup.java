@@ -0,0 +1,68 @@
+package tinyurl;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+
+/**
+ * Click count of a url within one hourly bucket. The row with bucket {@link #TOTAL_BUCKET} holds the url's running
+ * total, so the ALL window is a single row read.
+ */
+@Immutable
+@Entity
+@IdClass(UrlStatRollup.Key.class)
+@Table(name = "url_stat_rollups")
+public class UrlStatRollup {
+    static final long BUCKET_MILLIS = ChronoUnit.HOURS.getDuration().toMillis();
+    static final long TOTAL_BUCKET = -1;
+
+    @Id
+    @Column(name = "url_id")
+    private long urlId;
+
+    @Id
+    @Column(name = "bucket_start_millis")
+    private long bucketStartMillis;
+
+    @Column(name = "click_count")
+    private long clickCount;
+
+    public UrlStatRollup() {
+    }
+
+    static long bucketStart(long millis) {
+        return millis - Math.floorMod(millis, BUCKET_MILLIS);
+    }
+
+    @Override
+    public String toString() {
+        return "UrlStatRollup{urlId=" + urlId + ", bucketStartMillis=" + bucketStartMillis + ", clickCount=" + clickCount + "}";
+    }
+
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private long urlId;
+        private long bucketStartMillis;
+
+        public Key() {
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && urlId == key.urlId && bucketStartMillis == key.bucketStartMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(urlId, bucketStartMillis);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package tinyurl;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+@Repository
+public interface UrlStatRollupRepository extends JpaRepository<UrlStatRollup, UrlStatRollup.Key>, UrlStatRollupRepositoryCustom {
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT COALESCE(SUM(click_count), 0) FROM url_stat_rollups WHERE url_id=? AND bucket_start_millis>=?", nativeQuery = true)
+    long sumSince(long urlId, long bucketStartMillis);
+
+    @Transactional(readOnly = true)
+    @Query(value = "SELECT COALESCE(SUM(click_count), 0) FROM url_stat_rollups WHERE url_id=? AND bucket_start_millis=-1", nativeQuery = true)
+    long total(long urlId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM url_stat_rollups WHERE bucket_start_millis>=0 AND bucket_start_millis<?", nativeQuery = true)
+    int deleteBucketsBefore(long bucketStartMillis);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM url_stat_rollups WHERE url_id=?", nativeQuery = true)
+    int deleteByUrlId(long urlId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM url_stat_rollups WHERE url_id IN (?1)", nativeQuery = true)
+    int deleteByUrlIdIn(Collection<Long> urlIds);
+
+    /**
+     * Rollup equivalent of {@link UrlStatRepository#countBy(long, long)}. Counts are kept per hour, so the bucket
+     * containing the timestamp is counted in full.
+     */
+    default long countBy(long urlId, long timestampMillis) {
+        return timestampMillis <= 0 ? total(urlId) : sumSince(urlId, UrlStatRollup.bucketStart(timestampMillis));
+    }
+}
@@ -0,0 +1,23 @@
+package tinyurl;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface UrlStatRollupRepositoryCustom {
+    /**
+     * Adds the first {@code size} clicks to their hourly buckets and to the running totals of their urls.
+     */
+    void increment(long[] urlIds, long[] timestampsMillis, int size);
+
+    /**
+     * Recomputes the rollups of the urls with ids in {@code [fromUrlId, toUrlId]} from url_stats: the totals, kept
+     * where the existing total is higher, and the buckets starting at or after {@code sinceMillis}.
+     */
+    void rebuild(long fromUrlId, long toUrlId, long sinceMillis);
+
+    /**
+     * Rollup equivalent of {@link UrlStatRepositoryCustom#countBy(Collection, long[])}, see
+     * {@link UrlStatRollupRepository#countBy(long, long)}.
+     */
+    Map<Long, long[]> countBy(Collection<Long> urlIds, long[] timestampsMillis);
+}
@@ -0,0 +1,96 @@
+package tinyurl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+class UrlStatRollupRepositoryCustomImpl implements UrlStatRollupRepositoryCustom {
+    private static final String INCREMENT_SQL = "INSERT INTO url_stat_rollups (url_id, bucket_start_millis, click_count) VALUES (?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE click_count = click_count + VALUES(click_count)";
+    private static final String DELETE_BUCKETS_SQL = "DELETE FROM url_stat_rollups WHERE url_id>=? AND url_id<=? "
+            + "AND bucket_start_millis<>?";
+    private static final String REBUILD_BUCKETS_SQL = "INSERT INTO url_stat_rollups (url_id, bucket_start_millis, click_count) "
+            + "SELECT url_id, timestamp_millis - MOD(timestamp_millis, ?) AS bucket, count(*) FROM url_stats "
+            + "WHERE url_id>=? AND url_id<=? AND timestamp_millis>=? GROUP BY url_id, bucket";
+    private static final String REBUILD_TOTALS_SQL = "INSERT INTO url_stat_rollups (url_id, bucket_start_millis, click_count) "
+            + "SELECT url_id, ?, count(*) FROM url_stats WHERE url_id>=? AND url_id<=? GROUP BY url_id "
+            + "ON DUPLICATE KEY UPDATE click_count = GREATEST(click_count, VALUES(click_count))";
+    private static final Comparator<Bucket> BUCKET_ORDER = Comparator.comparingLong(Bucket::urlId)
+                                                                     .thenComparingLong(Bucket::bucketStartMillis);
+    @Autowired
+    private JdbcTemplate statsJdbcTemplate;
+
+    @Override
+    @Transactional(transactionManager = DataSourceConfig.STATS_TRANSACTION_MANAGER)
+    public void increment(long[] urlIds, long[] timestampsMillis, int size) {
+        // sorted, so concurrent writers lock rollup rows in the same order
+        Map<Bucket, Long> counts = new TreeMap<>(BUCKET_ORDER);
+        for (int i = 0; i < size; i++) {
+            counts.merge(new Bucket(urlIds[i], UrlStatRollup.bucketStart(timestampsMillis[i])), 1L, Long::sum);
+            counts.merge(new Bucket(urlIds[i], UrlStatRollup.TOTAL_BUCKET), 1L, Long::sum);
+        }
+        List<Object[]> args = new ArrayList<>(counts.size());
+        counts.forEach((bucket, count) -> args.add(new Object[]{bucket.urlId(), bucket.bucketStartMillis(), count}));
+        statsJdbcTemplate.batchUpdate(INCREMENT_SQL, args);
+    }
+
+    /**
+     * The delete locks the range's rollup rows and the gaps between them until commit. Writers increment the rollups
+     * before inserting into url_stats, so a writer of these urls either committed its clicks before the delete, or
+     * waits for the rebuild and adds its clicks on top of it.
+     * <p>
+     * Totals are only ever raised: with url_stats partitions, the clicks of dropped partitions are gone from url_stats
+     * but still counted in the existing total.
+     */
+    @Override
+    @Transactional(transactionManager = DataSourceConfig.STATS_TRANSACTION_MANAGER)
+    public void rebuild(long fromUrlId, long toUrlId, long sinceMillis) {
+        statsJdbcTemplate.update(DELETE_BUCKETS_SQL, fromUrlId, toUrlId, UrlStatRollup.TOTAL_BUCKET);
+        statsJdbcTemplate.update(REBUILD_BUCKETS_SQL, UrlStatRollup.BUCKET_MILLIS, fromUrlId, toUrlId,
+                            UrlStatRollup.bucketStart(sinceMillis));
+        statsJdbcTemplate.update(REBUILD_TOTALS_SQL, UrlStatRollup.TOTAL_BUCKET, fromUrlId, toUrlId);
+    }
+
+    @Override
+    @Transactional(transactionManager = DataSourceConfig.STATS_TRANSACTION_MANAGER, readOnly = true)
+    public Map<Long, long[]> countBy(Collection<Long> urlIds, long[] timestampsMillis) {
+        Map<Long, long[]> counts = new HashMap<>();
+        if (urlIds.isEmpty()) {
+            return counts;
+        }
+        StringBuilder sql = new StringBuilder("SELECT url_id");
+        List<Object> args = new ArrayList<>(timestampsMillis.length + urlIds.size());
+        for (long timestampMillis : timestampsMillis) {
+            if (timestampMillis <= 0) {
+                sql.append(", SUM(CASE WHEN bucket_start_millis=? THEN click_count ELSE 0 END)");
+                args.add(UrlStatRollup.TOTAL_BUCKET);
+            } else {
+                sql.append(", SUM(CASE WHEN bucket_start_millis>=? THEN click_count ELSE 0 END)");
+                args.add(UrlStatRollup.bucketStart(timestampMillis));
+            }
+        }
+        sql.append(" FROM url_stat_rollups WHERE url_id IN (").append(String.join(", ", Collections.nCopies(urlIds.size(), "?")))
+           .append(") GROUP BY url_id");
+        args.addAll(urlIds);
+        statsJdbcTemplate.query(sql.toString(), rs -> {
+            long[] urlCounts = new long[timestampsMillis.length];
+            for (int i = 0; i < urlCounts.length; i++) {
+                urlCounts[i] = rs.getLong(i + 2);
+            }
+            counts.put(rs.getLong(1), urlCounts);
+        }, args.toArray());
+        return counts;
+    }
+
+    private record Bucket(long urlId, long bucketStartMillis) {
+    }
+}
@@ -0,0 +1,90 @@
+package tinyurl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import tinyurl.shard.ShardRouter;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Maintenance of url_stat_rollups: a backfill building the rollups from existing url_stats rows, and a periodic prune of
+ * hourly buckets older than the longest stats window.
+ */
+@Component
+public class UrlStatRollups implements ApplicationRunner {
+    static final long RETENTION_MILLIS = Arrays.stream(WindowStat.Window.values())
+                                               .map(window -> window.duration)
+                                               .flatMap(Optional::stream)
+                                               .mapToLong(Long::longValue)
+                                               .max()
+                                               .orElse(0L) + UrlStatRollup.BUCKET_MILLIS;
+    private static final Logger log = LogManager.getLogger();
+    @Autowired
+    private UrlRepository urlRepository;
+    @Autowired
+    private UrlStatRollupRepository urlStatRollupRepository;
+    @Autowired
+    private ShardRouter shardRouter;
+    @Autowired
+    private Clock clock;
+    @Value("${tinyurl.stats.rollups.backfill-on-startup:false}")
+    private boolean backfillOnStartup;
+    @Value("${tinyurl.stats.rollups.backfill-batch-size:100}")
+    private int backfillBatchSize;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (backfillOnStartup) {
+            backfill();
+        }
+    }
+
+    /**
+     * Rebuilds the rollups of every url, a batch of urls per transaction. Returns the number of urls processed.
+     */
+    public long backfill() {
+        long sinceMillis = clock.millis() - RETENTION_MILLIS;
+        long processed = 0;
+        for (int shard = 0; shard < Math.max(shardRouter.count(), shardRouter.previousCount()); shard++) {
+            processed += backfill(shard, sinceMillis);
+        }
+        log.info("Backfilled url stat rollups for {} urls.", processed);
+        return processed;
+    }
+
+    private long backfill(int shard, long sinceMillis) {
+        long processed = 0;
+        long lastId = 0;
+        List<Long> ids;
+        while (!(ids = findIdsAfter(shard, lastId)).isEmpty()) {
+            long fromId = ids.get(0);
+            lastId = ids.get(ids.size() - 1);
+            // rebuilds by id range, which can cover urls of other shards too, only the url ids come from this shard
+            urlStatRollupRepository.rebuild(fromId, lastId, sinceMillis);
+            processed += ids.size();
+        }
+        return processed;
+    }
+
+    private List<Long> findIdsAfter(int shard, long lastId) {
+        return ShardRouter.onShard(shard, () -> urlRepository.findIdsAfter(lastId, backfillBatchSize));
+    }
+
+    @Scheduled(fixedDelayString = "${tinyurl.stats.rollups.prune-interval:PT1H}")
+    public void prune() {
+        try {
+            urlStatRollupRepository.deleteBucketsBefore(UrlStatRollup.bucketStart(clock.millis() - RETENTION_MILLIS));
+        } catch (Exception ex) {
+            log.error("Failed pruning url stat rollups.", ex);
+        }
+    }
+}
@@ -1,59 +1,214 @@
 package tinyurl;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import tinyurl.clicks.ClickWriter;
+import tinyurl.random.ShortUrlCodec;
 
+import java.io.IOException;
 import java.time.Clock;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UrlStatsController {
     private static final Logger log = LogManager.getLogger();
     private static final String ERROR_MSG = "Unable to get url stats, please try again later.";
-    private final ExecutorService statsExecutorService = Executors.newFixedThreadPool(10);
+    private static final String NOT_FOUND_MSG = "No stats available for the short url";
+    private static final String TOP_LINKS_DISABLED_MSG = "Top links are not enabled.";
     @Autowired
-    private UrlRepository urlRepository;
+    private UrlCache urlCache;
     @Autowired
-    private UrlStatRepository urlStatRepository;
+    private ClickWriter clickWriter;
+    @Autowired
+    private AsyncTaskExecutor statsExecutor;
+    @Autowired
+    private ClickSketches clickSketches;
+    @Autowired
+    private ShortUrlFilter shortUrlFilter;
+    @Autowired
+    private SingleFlight<Long, List<WindowStat>> urlStatsSingleFlight;
+    @Autowired
+    private DbConcurrencyLimiter dbConcurrencyLimiter;
+    @Autowired
+    private ObjectMapper objectMapper;
     @Autowired
     private Clock clock;
+    @Value("${tinyurl.stats.bulk.chunk-size:500}")
+    private int bulkChunkSize;
 
     @GetMapping("/urlStats/{shortUrl}")
     @ResponseBody
     public List<WindowStat> urlStats(@PathVariable String shortUrl) {
+        if (!ShortUrlCodec.isValid(shortUrl) || !shortUrlFilter.mightExist(shortUrl)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG);
+        }
         long currentMillis = clock.millis();
         Optional<Url> optUrl;
         try {
-            optUrl = urlRepository.findByShortUrl(shortUrl);
+            optUrl = urlCache.findByShortUrl(shortUrl);
         } catch (Exception ex) {
             log.error("Failed fetching url by short url.", ex);
             throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ERROR_MSG);
         }
 
-        return optUrl.map(url -> {
+        // expired and deleted urls keep their stats until the reaper removes them
+        return optUrl.filter(url -> !url.isExpired(currentMillis)).map(url -> {
             try {
-                return statsExecutorService.submit(() -> Arrays
-                        .stream(WindowStat.Window.values())
-                        .parallel()
-                        .map(window -> new WindowStat(window, urlStatRepository.countBy(url.getId(),
-                                                                                        window.getQueryTimestamp(currentMillis))))
-                        .collect(Collectors.toList())).get();
+                return urlStatsSingleFlight.call(url.getId(), () -> windowStats(url, currentMillis));
             } catch (Exception ex) {
                 log.error("Failed fetching stats for url.", ex);
                 throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ERROR_MSG);
             }
-        }).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No stats available for the short url"));
+        }).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, NOT_FOUND_MSG));
+    }
+
+    /**
+     * Stats of a JSON array or an NDJSON stream of short urls. Short urls are looked up and counted a chunk at a time,
+     * with one query for the urls not cached and one grouped query for the counts of every window, and one NDJSON line
+     * per short url is streamed back in order, holding either its stats or the error for it.
+     */
+    @PostMapping(value = "/urlStats", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public void bulkUrlStats(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        JsonGenerator generator = null;
+        try (JsonParser parser = objectMapper.createParser(request.getInputStream())) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            List<String> chunk = new ArrayList<>(bulkChunkSize);
+            while (token != null && token != JsonToken.END_ARRAY) {
+                if (token == JsonToken.VALUE_STRING) {
+                    chunk.add(parser.getText());
+                } else {
+                    parser.skipChildren();
+                    chunk.add(null);
+                }
+                token = parser.nextToken();
+                if (chunk.size() == bulkChunkSize || token == null || token == JsonToken.END_ARRAY) {
+                    if (generator == null) {
+                        response.setStatus(HttpStatus.OK.value());
+                        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+                        generator = objectMapper.createGenerator(response.getOutputStream());
+                        generator.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+                    }
+                    writeBulkStats(generator, chunk);
+                    generator.flush();
+                    chunk.clear();
+                }
+            }
+        } catch (JsonProcessingException ex) {
+            if (generator == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Please provide a JSON array or NDJSON stream of short urls.");
+            }
+            generator.writeStartObject();
+            generator.writeStringField("error", "Invalid JSON at offset " + ex.getLocation().getCharOffset() + ", stats stopped.");
+            generator.writeEndObject();
+        } finally {
+            if (generator != null) {
+                generator.close();
+            }
+        }
+    }
+
+    private void writeBulkStats(JsonGenerator generator, List<String> shortUrls) throws IOException {
+        long currentMillis = clock.millis();
+        WindowStat.Window[] windows = WindowStat.Window.values();
+        long[] timestampsMillis = Arrays.stream(windows).mapToLong(window -> window.getQueryTimestamp(currentMillis)).toArray();
+        Map<String, Url> urls = new HashMap<>();
+        Map<Long, long[]> counts = null;
+        try {
+            List<String> candidates = shortUrls.stream()
+                                               .filter(shortUrl -> shortUrl != null && ShortUrlCodec.isValid(shortUrl)
+                                                       && shortUrlFilter.mightExist(shortUrl))
+                                               .distinct()
+                                               .toList();
+            urlCache.findAllByShortUrl(candidates)
+                    .forEach((shortUrl, url) -> url.filter(found -> !found.isExpired(currentMillis))
+                                                   .ifPresent(found -> urls.put(shortUrl, found)));
+            List<Long> urlIds = urls.values().stream().map(Url::getId).distinct().toList();
+            counts = dbConcurrencyLimiter.call(() -> clickWriter.countBy(urlIds, timestampsMillis));
+        } catch (Exception ex) {
+            log.error("Failed fetching stats for urls.", ex);
+        }
+
+        for (String shortUrl : shortUrls) {
+            generator.writeStartObject();
+            generator.writeStringField("shortUrl", shortUrl);
+            Url url = urls.get(shortUrl);
+            if (counts == null) {
+                generator.writeStringField("error", ERROR_MSG);
+            } else if (url == null) {
+                generator.writeStringField("error", NOT_FOUND_MSG);
+            } else {
+                long[] urlCounts = counts.getOrDefault(url.getId(), new long[windows.length]);
+                List<WindowStat> stats = new ArrayList<>(windows.length);
+                for (int i = 0; i < windows.length; i++) {
+                    stats.add(new WindowStat(windows[i], urlCounts[i], uniqueVisitors(url, windows[i], currentMillis)));
+                }
+                generator.writeObjectField("stats", stats);
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private List<WindowStat> windowStats(Url url, long currentMillis) {
+        List<CompletableFuture<WindowStat>> windowStats = Arrays
+                .stream(WindowStat.Window.values())
+                .map(window -> CompletableFuture.supplyAsync(() -> new WindowStat(window, dbConcurrencyLimiter.call(
+                        () -> clickWriter.countBy(url.getId(), window.getQueryTimestamp(currentMillis))),
+                        uniqueVisitors(url, window, currentMillis)), statsExecutor))
+                .toList();
+        return windowStats.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    /**
+     * The most clicked short urls in the window with approximate click counts, from {@link ClickSketches}.
+     */
+    @GetMapping("/topLinks")
+    @ResponseBody
+    public List<ClickSketches.TopLink> topLinks(@RequestParam(defaultValue = "DAY") WindowStat.Window window,
+                                               @RequestParam(defaultValue = "10") int limit) {
+        if (!clickSketches.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, TOP_LINKS_DISABLED_MSG);
+        }
+        if (limit < 1 || limit > clickSketches.getTopK()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                              "Limit must be between 1 and " + clickSketches.getTopK() + ".");
+        }
+        return clickSketches.topLinks(window.getQueryTimestamp(clock.millis()), limit);
+    }
+
+    private Long uniqueVisitors(Url url, WindowStat.Window window, long currentMillis) {
+        return clickSketches.isEnabled() ? clickSketches.uniqueVisitors(url.getId(), window.getQueryTimestamp(currentMillis))
+                                         : null;
     }
 }
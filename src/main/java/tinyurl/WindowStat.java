@@ -1,6 +1,7 @@
 package tinyurl;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.time.temporal.ChronoUnit;
 import java.util.Optional;
@@ -9,10 +10,20 @@ import java.util.Optional;
 final class WindowStat {
     final Window window;
     final long count;
+    /**
+     * Approximate distinct visitors in the window, only with {@code tinyurl.stats.sketches.enabled}.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    final Long uniqueVisitors;
 
     WindowStat(Window window, long count) {
+        this(window, count, null);
+    }
+
+    WindowStat(Window window, long count, Long uniqueVisitors) {
         this.window = window;
         this.count = count;
+        this.uniqueVisitors = uniqueVisitors;
     }
 
     enum Window {
@@ -0,0 +1,19 @@
+package tinyurl.clicks;
+
+/**
+ * What {@link ClickPipeline#record(long, long)} does when clicks arrive faster than they can be flushed.
+ */
+public enum BackpressurePolicy {
+    /**
+     * Drop the click when the buffer is full.
+     */
+    DROP,
+    /**
+     * Block the request thread until there is room in the buffer, up to the configured block timeout.
+     */
+    BLOCK,
+    /**
+     * Keep only a sample of the clicks once the buffer is more than half full, drop the click when it is full.
+     */
+    SAMPLE
+}
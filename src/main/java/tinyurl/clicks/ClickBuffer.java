@@ -0,0 +1,140 @@
+package tinyurl.clicks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer of (url id, timestamp) click pairs kept in primitive arrays, so queueing a click allocates nothing.
+ */
+final class ClickBuffer {
+    private final long[] urlIds;
+    private final long[] timestamps;
+    private final int batchSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition batchReady = lock.newCondition();
+    private int head;
+    private int count;
+    private boolean closed;
+
+    ClickBuffer(int capacity, int batchSize) {
+        if (capacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Capacity and batch size must be positive.");
+        }
+        this.urlIds = new long[capacity];
+        this.timestamps = new long[capacity];
+        this.batchSize = Math.min(batchSize, capacity);
+    }
+
+    int capacity() {
+        return urlIds.length;
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a click if there is room, returns false if the buffer is full or closed.
+     */
+    boolean offer(long urlId, long timestampMillis) {
+        lock.lock();
+        try {
+            if (closed || count == urlIds.length) {
+                return false;
+            }
+            enqueue(urlId, timestampMillis);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a click, waiting up to the timeout for room. Returns false if the buffer stayed full or was closed.
+     */
+    boolean offer(long urlId, long timestampMillis, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!closed && count == urlIds.length) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            if (closed) {
+                return false;
+            }
+            enqueue(urlId, timestampMillis);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a full batch is buffered, the timeout elapses or the buffer is closed, then moves up to
+     * {@code urlIdsOut.length} clicks into the given arrays. Returns the number of clicks drained.
+     */
+    int drain(long[] urlIdsOut, long[] timestampsOut, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!closed && count < batchSize && nanos > 0) {
+                nanos = batchReady.awaitNanos(nanos);
+            }
+            int n = Math.min(count, urlIdsOut.length);
+            for (int i = 0; i < n; i++) {
+                urlIdsOut[i] = urlIds[head];
+                timestampsOut[i] = timestamps[head];
+                head = (head + 1) % urlIds.length;
+            }
+            count -= n;
+            if (n > 0) {
+                notFull.signalAll();
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting clicks and wakes up any waiting producer or consumer. Buffered clicks can still be drained.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+            batchReady.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(long urlId, long timestampMillis) {
+        int tail = (head + count) % urlIds.length;
+        urlIds[tail] = urlId;
+        timestamps[tail] = timestampMillis;
+        if (++count == batchSize) {
+            batchReady.signal();
+        }
+    }
+}
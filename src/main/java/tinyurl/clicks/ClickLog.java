@@ -0,0 +1,444 @@
+package tinyurl.clicks;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Append-only click store in {@code tinyurl.stats.log.dir}: fixed width records of url id and timestamp in memory mapped
+ * segment files of {@code segment-records} records each. Every segment keeps its min and max timestamp and, per url, its
+ * click count and the blocks of records holding its clicks. A window count skips segments older than the window, takes
+ * the count from the index for segments entirely inside it and only scans the url's blocks of the segment it starts in.
+ * <p>
+ * Deletes are tombstones, the url id and deletion time appended to a file, hiding the url's earlier clicks. Compaction
+ * rewrites sealed segments without tombstoned and expired clicks and removes segments past {@code retention}. On startup
+ * the segments are scanned to rebuild the index, the active one up to its first empty record. Records reach the page
+ * cache on write, so they survive a crash of the process, and are forced to disk every {@code sync-interval}.
+ * <p>
+ * Clicks are stored on the node that served them, so counts only cover all clicks with a single node.
+ */
+@Component
+@ConditionalOnProperty(name = "tinyurl.stats.backend", havingValue = "log")
+public class ClickLog implements ClickWriter, Closeable {
+    static final int RECORD_BYTES = 16;
+    static final int BLOCK_RECORDS = 1024;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final String TOMBSTONES = "tombstones";
+    private static final Logger log = LogManager.getLogger();
+    private final Path dir;
+    private final int segmentRecords;
+    private final long retentionMillis;
+    private final Clock clock;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<Long, Long> tombstones = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel tombstoneChannel;
+
+    @Autowired
+    public ClickLog(@Value("${tinyurl.stats.log.dir:clicks}") Path dir,
+                    @Value("${tinyurl.stats.log.segment-records:1048576}") int segmentRecords,
+                    @Value("${tinyurl.stats.log.retention:P0D}") Duration retention,
+                    Clock clock) throws IOException {
+        this.dir = dir;
+        this.segmentRecords = segmentRecords;
+        this.retentionMillis = retention.toMillis();
+        this.clock = clock;
+        Files.createDirectories(dir);
+        recover();
+    }
+
+    @Override
+    public void write(long[] urlIds, long[] timestampsMillis, int size) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                Segment active = segments.get(segments.size() - 1);
+                if (active.isFull()) {
+                    active.force();
+                    active = openSegment(active.sequence + 1);
+                    segments.add(active);
+                }
+                active.append(urlIds[i], timestampsMillis[i]);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long countBy(long urlId, long timestampMillis) {
+        lock.readLock().lock();
+        try {
+            long deletedAt = tombstones.getOrDefault(urlId, Long.MIN_VALUE);
+            // clicks at or before the deletion belong to the deleted url
+            long since = Math.max(timestampMillis, deletedAt);
+            long count = 0;
+            for (Segment segment : segments) {
+                count += segment.countBy(urlId, since);
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(long urlId) {
+        lock.writeLock().lock();
+        try {
+            long deletedAt = clock.millis();
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).putLong(urlId).putLong(deletedAt).flip();
+            while (record.hasRemaining()) {
+                tombstoneChannel.write(record);
+            }
+            tombstoneChannel.force(false);
+            tombstones.merge(urlId, deletedAt, Math::max);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tombstones only the ids with clicks in the log, a created url rarely has any.
+     */
+    @Override
+    public void purge(Collection<Long> urlIds) {
+        for (long urlId : urlIds) {
+            if (holds(urlId)) {
+                delete(urlId);
+            }
+        }
+    }
+
+    private boolean holds(long urlId) {
+        lock.readLock().lock();
+        try {
+            for (Segment segment : segments) {
+                if (segment.holds(urlId)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tinyurl.stats.log.sync-interval:PT1S}")
+    public void sync() {
+        lock.readLock().lock();
+        try {
+            segments.get(segments.size() - 1).force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tinyurl.stats.log.compact-interval:PT1H}")
+    public void scheduledCompact() {
+        try {
+            compact();
+        } catch (Exception ex) {
+            log.error("Failed compacting the click log.", ex);
+        }
+    }
+
+    /**
+     * Drops expired segments and rewrites sealed segments holding tombstoned or expired clicks. Writes wait meanwhile,
+     * the pipeline buffers them. Returns the number of records removed.
+     */
+    public long compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            long expiredBefore = retentionMillis > 0 ? clock.millis() - retentionMillis : Long.MIN_VALUE;
+            long removed = 0;
+            for (int i = 0; i < segments.size() - 1; i++) {
+                Segment segment = segments.get(i);
+                if (segment.maxMillis < expiredBefore) {
+                    removed += segment.size;
+                    Files.delete(segment.path);
+                    segments.remove(i--);
+                } else if (segment.minMillis < expiredBefore || segment.hasTombstoned(tombstones)) {
+                    Segment compacted = rewrite(segment, expiredBefore);
+                    removed += segment.size - (compacted != null ? compacted.size : 0);
+                    if (compacted != null) {
+                        segments.set(i, compacted);
+                    } else {
+                        segments.remove(i--);
+                    }
+                }
+            }
+            // tombstones only matter while the active segment may hold clicks from before the deletion
+            long activeMin = segments.get(segments.size() - 1).minMillis;
+            if (tombstones.values().removeIf(deletedAt -> deletedAt < activeMin)) {
+                rewriteTombstones();
+            }
+            if (removed > 0) {
+                log.info("Compacted the click log, removed {} records.", removed);
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            segments.get(segments.size() - 1).force();
+            tombstoneChannel.close();
+        } catch (IOException ex) {
+            log.error("Failed closing the click log.", ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : files.sorted().toList()) {
+                if (path.toString().endsWith(SEGMENT_SUFFIX)) {
+                    segments.add(Segment.load(path, sequence(path)));
+                } else if (path.toString().endsWith(COMPACT_SUFFIX)) {
+                    // left by a crash during compaction, the original is still in place
+                    Files.delete(path);
+                }
+            }
+        }
+        if (segments.isEmpty() || segments.get(segments.size() - 1).isFull()) {
+            segments.add(openSegment(segments.isEmpty() ? 0 : segments.get(segments.size() - 1).sequence + 1));
+        }
+        Path tombstonePath = dir.resolve(TOMBSTONES);
+        tombstoneChannel = FileChannel.open(tombstonePath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE);
+        ByteBuffer buffer = ByteBuffer.allocate((int) tombstoneChannel.size());
+        while (buffer.hasRemaining() && tombstoneChannel.read(buffer) >= 0) {
+            // read the whole file
+        }
+        buffer.flip();
+        // a tombstone torn by a crash is ignored
+        while (buffer.remaining() >= RECORD_BYTES) {
+            tombstones.merge(buffer.getLong(), buffer.getLong(), Math::max);
+        }
+        tombstoneChannel.truncate(buffer.position());
+        tombstoneChannel.position(buffer.position());
+        long records = segments.stream().mapToLong(segment -> segment.size).sum();
+        log.info("Recovered {} click log segments with {} records.", segments.size(), records);
+    }
+
+    private Segment openSegment(long sequence) throws IOException {
+        return Segment.create(dir.resolve(segmentName(sequence)), sequence, segmentRecords);
+    }
+
+    /**
+     * Replaces the segment with a copy of its live records, or deletes it and returns null if there are none.
+     */
+    private Segment rewrite(Segment segment, long expiredBefore) throws IOException {
+        Path compactPath = dir.resolve(segmentName(segment.sequence) + COMPACT_SUFFIX);
+        int kept = 0;
+        long[] urlIds = new long[segment.size];
+        long[] timestamps = new long[segment.size];
+        for (int i = 0; i < segment.size; i++) {
+            long urlId = segment.urlId(i);
+            long timestamp = segment.timestamp(i);
+            if (timestamp >= expiredBefore && timestamp > tombstones.getOrDefault(urlId, Long.MIN_VALUE)) {
+                urlIds[kept] = urlId;
+                timestamps[kept++] = timestamp;
+            }
+        }
+        if (kept == 0) {
+            Files.delete(segment.path);
+            return null;
+        }
+        Segment compacted = Segment.create(compactPath, segment.sequence, kept);
+        for (int i = 0; i < kept; i++) {
+            compacted.append(urlIds[i], timestamps[i]);
+        }
+        compacted.force();
+        Files.move(compactPath, segment.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Segment.load(segment.path, segment.sequence);
+    }
+
+    private void rewriteTombstones() throws IOException {
+        Path tombstonePath = dir.resolve(TOMBSTONES);
+        Path compactPath = dir.resolve(TOMBSTONES + COMPACT_SUFFIX);
+        ByteBuffer buffer = ByteBuffer.allocate(tombstones.size() * RECORD_BYTES);
+        tombstones.forEach((urlId, deletedAt) -> buffer.putLong(urlId).putLong(deletedAt));
+        Files.write(compactPath, Arrays.copyOf(buffer.array(), buffer.position()));
+        tombstoneChannel.close();
+        Files.move(compactPath, tombstonePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        tombstoneChannel = FileChannel.open(tombstonePath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static String segmentName(long sequence) {
+        return String.format("%020d", sequence) + SEGMENT_SUFFIX;
+    }
+
+    private static long sequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * A segment file and its index. Written by one thread at a time under the write lock, read under the read lock.
+     */
+    static final class Segment {
+        final Path path;
+        final long sequence;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final Map<Long, UrlEntry> index = new HashMap<>();
+        private int size;
+        private long minMillis = Long.MAX_VALUE;
+        private long maxMillis = Long.MIN_VALUE;
+
+        private Segment(Path path, long sequence, MappedByteBuffer buffer) {
+            this.path = path;
+            this.sequence = sequence;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity() / RECORD_BYTES;
+        }
+
+        static Segment create(Path path, long sequence, int records) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE)) {
+                return new Segment(path, sequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) records * RECORD_BYTES));
+            }
+        }
+
+        /**
+         * Maps an existing segment and indexes its records, up to the first empty one. Url ids are never 0, so an empty
+         * record marks the end of what was written before a restart or crash.
+         */
+        static Segment load(Path path, long sequence) throws IOException {
+            Segment segment;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = new Segment(path, sequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+            }
+            for (int i = 0; i < segment.capacity; i++) {
+                long urlId = segment.urlId(i);
+                if (urlId == 0) {
+                    break;
+                }
+                segment.index(urlId, segment.timestamp(i));
+            }
+            return segment;
+        }
+
+        boolean isFull() {
+            return size == capacity;
+        }
+
+        void append(long urlId, long timestampMillis) {
+            int offset = size * RECORD_BYTES;
+            // the url id goes last, a record is only read once it is set
+            buffer.putLong(offset + 8, timestampMillis);
+            buffer.putLong(offset, urlId);
+            index(urlId, timestampMillis);
+        }
+
+        long urlId(int record) {
+            return buffer.getLong(record * RECORD_BYTES);
+        }
+
+        long timestamp(int record) {
+            return buffer.getLong(record * RECORD_BYTES + 8);
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        long countBy(long urlId, long sinceMillis) {
+            UrlEntry entry = index.get(urlId);
+            if (entry == null || maxMillis <= sinceMillis) {
+                return 0;
+            }
+            if (minMillis > sinceMillis) {
+                return entry.count;
+            }
+            long count = 0;
+            for (int b = 0; b < entry.blockCount; b++) {
+                int from = entry.blocks[b] * BLOCK_RECORDS;
+                int to = Math.min(from + BLOCK_RECORDS, size);
+                for (int i = from; i < to; i++) {
+                    if (urlId(i) == urlId && timestamp(i) > sinceMillis) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        boolean holds(long urlId) {
+            return index.containsKey(urlId);
+        }
+
+        boolean hasTombstoned(Map<Long, Long> tombstones) {
+            for (Map.Entry<Long, Long> tombstone : tombstones.entrySet()) {
+                if (tombstone.getValue() >= minMillis && index.containsKey(tombstone.getKey())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void index(long urlId, long timestampMillis) {
+            index.computeIfAbsent(urlId, id -> new UrlEntry()).add(size / BLOCK_RECORDS);
+            minMillis = Math.min(minMillis, timestampMillis);
+            maxMillis = Math.max(maxMillis, timestampMillis);
+            size++;
+        }
+    }
+
+    /**
+     * A url's click count in a segment and the ascending blocks holding its clicks.
+     */
+    private static final class UrlEntry {
+        private int count;
+        private int[] blocks = new int[1];
+        private int blockCount;
+
+        void add(int block) {
+            count++;
+            if (blockCount > 0 && blocks[blockCount - 1] == block) {
+                return;
+            }
+            if (blockCount == blocks.length) {
+                blocks = Arrays.copyOf(blocks, blockCount * 2);
+            }
+            blocks[blockCount++] = block;
+        }
+    }
+}
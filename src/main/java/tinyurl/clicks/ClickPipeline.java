@@ -0,0 +1,238 @@
+package tinyurl.clicks;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers clicks in memory and writes them through {@link ClickWriter} in batches, once a batch is full or the
+ * flush interval elapses. On shutdown the pipeline stops accepting clicks and drains the buffer before the datasource is closed.
+ */
+@Component
+public class ClickPipeline implements SmartLifecycle, MeterBinder {
+    private static final Logger log = LogManager.getLogger();
+    private final ClickWriter clickWriter;
+    private final ClickBuffer buffer;
+    private final int batchSize;
+    private final BackpressurePolicy backpressurePolicy;
+    private final double sampleRate;
+    private final Duration flushInterval;
+    private final Duration blockTimeout;
+    private final Duration drainTimeout;
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final Map<Long, Deletion> deleted = new ConcurrentHashMap<>();
+    private final Duration deletedRetention;
+    private volatile Thread flusher;
+
+    @Autowired
+    public ClickPipeline(ClickWriter clickWriter,
+                         @Value("${tinyurl.clicks.capacity:65536}") int capacity,
+                         @Value("${tinyurl.clicks.batch-size:500}") int batchSize,
+                         @Value("${tinyurl.clicks.flush-interval:PT1S}") Duration flushInterval,
+                         @Value("${tinyurl.clicks.backpressure:DROP}") BackpressurePolicy backpressurePolicy,
+                         @Value("${tinyurl.clicks.sample-rate:0.1}") double sampleRate,
+                         @Value("${tinyurl.clicks.block-timeout:PT0.1S}") Duration blockTimeout,
+                         @Value("${tinyurl.clicks.drain-timeout:PT30S}") Duration drainTimeout) {
+        this.clickWriter = clickWriter;
+        this.buffer = new ClickBuffer(capacity, batchSize);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.backpressurePolicy = backpressurePolicy;
+        this.sampleRate = sampleRate;
+        this.blockTimeout = blockTimeout;
+        this.drainTimeout = drainTimeout;
+        // a buffered click is written within a flush interval, or by the end of the drain on shutdown
+        Duration flushes = flushInterval.multipliedBy(2);
+        this.deletedRetention = flushes.compareTo(drainTimeout) > 0 ? flushes : drainTimeout;
+    }
+
+    /**
+     * Drops the buffered clicks of a url deleted at {@code deletedAtMillis}. Written after the url's clicks were deleted,
+     * they would be left under an id that a url created with the same short url gets again. Clicks buffered on other
+     * nodes are deleted when the id is reused, see {@link ClickWriter#purge}.
+     */
+    public void forget(long urlId, long deletedAtMillis) {
+        deleted.put(urlId, new Deletion(deletedAtMillis, System.nanoTime()));
+    }
+
+    /**
+     * Queues a click for the url, applying the backpressure policy if the buffer is filling up.
+     * Returns false if the click was dropped.
+     */
+    public boolean record(long urlId, long timestampMillis) {
+        boolean accepted = switch (backpressurePolicy) {
+            case DROP -> buffer.offer(urlId, timestampMillis);
+            case BLOCK -> offerBlocking(urlId, timestampMillis);
+            case SAMPLE -> sampled() && buffer.offer(urlId, timestampMillis);
+        };
+        if (!accepted) {
+            dropped.incrementAndGet();
+        }
+        return accepted;
+    }
+
+    public int queueDepth() {
+        return buffer.size();
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    public long flushedCount() {
+        return flushed.get();
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    public long failedCount() {
+        return failed.get();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("tinyurl.clicks.queue.depth", this, ClickPipeline::queueDepth)
+             .description("Clicks buffered and not yet saved")
+             .register(registry);
+        Gauge.builder("tinyurl.clicks.queue.capacity", this, ClickPipeline::capacity)
+             .register(registry);
+        FunctionCounter.builder("tinyurl.clicks.flushed", this, ClickPipeline::flushedCount)
+                       .description("Clicks saved")
+                       .register(registry);
+        FunctionCounter.builder("tinyurl.clicks.dropped", this, ClickPipeline::droppedCount)
+                       .description("Clicks dropped by the backpressure policy or because their url was deleted")
+                       .register(registry);
+        FunctionCounter.builder("tinyurl.clicks.failed", this, ClickPipeline::failedCount)
+                       .description("Clicks lost to errors saving them")
+                       .register(registry);
+    }
+
+    @Override
+    public void start() {
+        Thread thread = new Thread(this::run, "click-flusher");
+        thread.setDaemon(true);
+        flusher = thread;
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread thread = flusher;
+        buffer.close();
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(drainTimeout.toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            log.warn("Click pipeline did not drain within {}, {} clicks were not saved.", drainTimeout, buffer.size());
+            thread.interrupt();
+        }
+        flusher = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return flusher != null;
+    }
+
+    /**
+     * Stop after the web server, so clicks recorded by requests finishing during a graceful shutdown are flushed too.
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 4096;
+    }
+
+    private boolean offerBlocking(long urlId, long timestampMillis) {
+        try {
+            return buffer.offer(urlId, timestampMillis, blockTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Removes the clicks of deleted urls from the batch, returns the size left. Deletions are forgotten once no click
+     * recorded before them can still be buffered.
+     */
+    private int dropDeleted(long[] urlIds, long[] timestamps, int size) {
+        long nanos = System.nanoTime();
+        deleted.values().removeIf(deletion -> nanos - deletion.forgottenNanos() > deletedRetention.toNanos());
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            Deletion deletion = deleted.get(urlIds[i]);
+            if (deletion != null && timestamps[i] <= deletion.deletedAtMillis()) {
+                dropped.incrementAndGet();
+                continue;
+            }
+            urlIds[kept] = urlIds[i];
+            timestamps[kept] = timestamps[i];
+            kept++;
+        }
+        return kept;
+    }
+
+    private boolean sampled() {
+        return buffer.size() * 2 < buffer.capacity() || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    private void run() {
+        long[] urlIds = new long[batchSize];
+        long[] timestamps = new long[batchSize];
+        try {
+            while (true) {
+                int size = buffer.drain(urlIds, timestamps, flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+                if (size > 0) {
+                    flush(urlIds, timestamps, size);
+                } else if (buffer.isClosed()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(long[] urlIds, long[] timestamps, int size) {
+        if (!deleted.isEmpty()) {
+            size = dropDeleted(urlIds, timestamps, size);
+            if (size == 0) {
+                return;
+            }
+        }
+        try {
+            clickWriter.write(urlIds, timestamps, size);
+            flushed.addAndGet(size);
+        } catch (Exception ex) {
+            failed.addAndGet(size);
+            log.error("Unable to save url stats.", ex);
+        }
+    }
+
+    private record Deletion(long deletedAtMillis, long forgottenNanos) {
+    }
+}
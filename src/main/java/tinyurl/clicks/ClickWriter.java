@@ -0,0 +1,62 @@
+package tinyurl.clicks;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores clicks and counts them per url. Backed by url_stats and url_stat_rollups by default, or by the memory mapped
+ * {@link ClickLog} with {@code tinyurl.stats.backend=log}.
+ */
+public interface ClickWriter {
+    /**
+     * Stores one click, for the url id and timestamp at the same index, for the first {@code size} entries.
+     */
+    void write(long[] urlIds, long[] timestampsMillis, int size);
+
+    default void write(long urlId, long timestampMillis) {
+        write(new long[]{urlId}, new long[]{timestampMillis}, 1);
+    }
+
+    /**
+     * Counts the clicks of the url after the timestamp.
+     */
+    long countBy(long urlId, long timestampMillis);
+
+    /**
+     * Counts the clicks of each url after each of the timestamps. Urls without clicks may be left out.
+     */
+    default Map<Long, long[]> countBy(Collection<Long> urlIds, long[] timestampsMillis) {
+        Map<Long, long[]> counts = new HashMap<>();
+        for (long urlId : urlIds) {
+            long[] urlCounts = new long[timestampsMillis.length];
+            for (int i = 0; i < urlCounts.length; i++) {
+                urlCounts[i] = countBy(urlId, timestampsMillis[i]);
+            }
+            counts.put(urlId, urlCounts);
+        }
+        return counts;
+    }
+
+    /**
+     * Deletes the clicks of a deleted url.
+     */
+    void delete(long urlId);
+
+    /**
+     * Deletes the clicks left under the ids of urls just created. Url ids follow the short url, so a url created with
+     * the short url of a deleted one would otherwise count clicks that reached the store after that url was deleted.
+     */
+    default void purge(Collection<Long> urlIds) {
+        urlIds.forEach(this::delete);
+    }
+
+    /**
+     * Deletes up to {@code limit} clicks of a deleted url and returns how many it deleted. All clicks are gone once it
+     * returns less than the limit.
+     */
+    default int delete(long urlId, int limit) {
+        delete(urlId);
+        return 0;
+    }
+}
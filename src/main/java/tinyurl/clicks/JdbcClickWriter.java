@@ -0,0 +1,94 @@
+package tinyurl.clicks;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import tinyurl.DataSourceConfig;
+import tinyurl.UrlStatRepository;
+import tinyurl.UrlStatRollupRepository;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Saves flushed clicks to url_stats. With {@code tinyurl.stats.rollups.enabled} set they are also added to
+ * url_stat_rollups in the same transaction, and counts come from the rollups.
+ */
+@Component
+@ConditionalOnProperty(name = "tinyurl.stats.backend", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcClickWriter implements ClickWriter {
+    @Autowired
+    private UrlStatRepository urlStatRepository;
+    @Autowired
+    private UrlStatRollupRepository urlStatRollupRepository;
+    @Value("${tinyurl.stats.rollups.enabled:false}")
+    private boolean rollupsEnabled;
+
+    @Override
+    @Transactional(transactionManager = DataSourceConfig.STATS_TRANSACTION_MANAGER)
+    public void write(long[] urlIds, long[] timestampsMillis, int size) {
+        if (rollupsEnabled) {
+            // rollups first, a rebuild of these urls then waits for this transaction to commit, see rebuild
+            urlStatRollupRepository.increment(urlIds, timestampsMillis, size);
+        }
+        urlStatRepository.insertBatch(urlIds, timestampsMillis, size);
+    }
+
+    @Override
+    @Transactional(transactionManager = DataSourceConfig.STATS_TRANSACTION_MANAGER)
+    public void write(long urlId, long timestampMillis) {
+        write(new long[]{urlId}, new long[]{timestampMillis}, 1);
+    }
+
+    @Override
+    public long countBy(long urlId, long timestampMillis) {
+        return rollupsEnabled ? urlStatRollupRepository.countBy(urlId, timestampMillis)
+                              : urlStatRepository.countBy(urlId, timestampMillis);
+    }
+
+    /**
+     * Counts all urls in one grouped query, with a conditional sum per timestamp.
+     */
+    @Override
+    public Map<Long, long[]> countBy(Collection<Long> urlIds, long[] timestampsMillis) {
+        return rollupsEnabled ? urlStatRollupRepository.countBy(urlIds, timestampsMillis)
+                              : urlStatRepository.countBy(urlIds, timestampsMillis);
+    }
+
+    /**
+     * Deletes the clicks and rollups of a deleted url. url_stats has no foreign key to urls, as it may be in another
+     * database, see {@link tinyurl.UrlStatForeignKeys}.
+     */
+    @Override
+    @Transactional(transactionManager = DataSourceConfig.STATS_TRANSACTION_MANAGER)
+    public void delete(long urlId) {
+        urlStatRepository.deleteByUrlId(urlId);
+        urlStatRollupRepository.deleteByUrlId(urlId);
+    }
+
+    @Override
+    @Transactional(transactionManager = DataSourceConfig.STATS_TRANSACTION_MANAGER)
+    public void purge(Collection<Long> urlIds) {
+        if (urlIds.isEmpty()) {
+            return;
+        }
+        urlStatRepository.deleteByUrlIdIn(urlIds);
+        urlStatRollupRepository.deleteByUrlIdIn(urlIds);
+    }
+
+    /**
+     * Deletes the clicks of a deleted url in statements of {@code limit} rows, then its rollups, so a url with many clicks
+     * doesn't hold locks for long.
+     */
+    @Override
+    @Transactional(transactionManager = DataSourceConfig.STATS_TRANSACTION_MANAGER)
+    public int delete(long urlId, int limit) {
+        int deleted = urlStatRepository.deleteByUrlId(urlId, limit);
+        if (deleted < limit) {
+            urlStatRollupRepository.deleteByUrlId(urlId);
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,116 @@
+package tinyurl.random;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out short urls from blocks of sequence values reserved in the short_url_sequences table, one database round trip
+ * per block. Each value is scrambled with a keyed Feistel permutation of the 40 bit short url space, so consecutive
+ * values don't produce consecutive short urls, and the permutation being a bijection means no two values collide.
+ * <p>
+ * The key must be the same on every node and must never change, otherwise new short urls can collide with issued ones.
+ * <p>
+ * Guarded by a lock rather than a monitor, so a virtual thread waiting for a block reservation doesn't pin its carrier.
+ */
+@Service
+@ConditionalOnProperty(name = "tinyurl.short-url.generator", havingValue = "block")
+public class BlockRandomUrl implements RandomUrl {
+    static final String SEQUENCE_NAME = "short_url";
+    private static final int HALF_BITS = (ShortUrlCodec.SHORT_URL_LENGTH * ShortUrlCodec.BITS_PER_CHAR) / 2;
+    private static final int HALF_MASK = (1 << HALF_BITS) - 1;
+    private static final int ROUNDS = 4;
+    private final ShortUrlSequenceRepository sequenceRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int blockSize;
+    private final int[] roundKeys;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long next;
+    private long limit;
+
+    @Autowired
+    public BlockRandomUrl(ShortUrlSequenceRepository sequenceRepository,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${tinyurl.short-url.block-size:1000}") int blockSize,
+                          @Value("${tinyurl.short-url.key:25214903917}") long key) {
+        this.sequenceRepository = sequenceRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.blockSize = blockSize;
+        this.roundKeys = roundKeys(key);
+    }
+
+    @Override
+    public String generate() {
+        long value;
+        lock.lock();
+        try {
+            if (next == limit) {
+                next = allocate();
+                limit = next + blockSize;
+            }
+            value = next++;
+        } finally {
+            lock.unlock();
+        }
+        return ShortUrlCodec.encode(scramble(value, roundKeys));
+    }
+
+    static long scramble(long value, int[] roundKeys) {
+        int left = (int) (value >>> HALF_BITS) & HALF_MASK;
+        int right = (int) value & HALF_MASK;
+        for (int roundKey : roundKeys) {
+            int previousRight = right;
+            right = left ^ round(right, roundKey);
+            left = previousRight;
+        }
+        return ((long) left << HALF_BITS) | right;
+    }
+
+    static int[] roundKeys(long key) {
+        int[] keys = new int[ROUNDS];
+        long state = key;
+        for (int i = 0; i < ROUNDS; i++) {
+            // splitmix64
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            keys[i] = (int) (z ^ (z >>> 31));
+        }
+        return keys;
+    }
+
+    private static int round(int half, int roundKey) {
+        int x = (half ^ roundKey) * 0x45D9F3B;
+        x ^= x >>> 16;
+        x *= 0x45D9F3B;
+        x ^= x >>> 16;
+        return x & HALF_MASK;
+    }
+
+    private long allocate() {
+        Long start = reserveBlock();
+        if (start == null) {
+            // first start, every node starting now creates the row, and each then reserves a block of its own
+            transactionTemplate.executeWithoutResult(status -> sequenceRepository.create(SEQUENCE_NAME));
+            start = reserveBlock();
+        }
+        if (start + blockSize - 1 > ShortUrlCodec.MAX_VALUE) {
+            throw new IllegalStateException("Short url space exhausted.");
+        }
+        return start;
+    }
+
+    /**
+     * The start of a newly reserved block, or null if the sequence row doesn't exist yet.
+     */
+    private Long reserveBlock() {
+        return transactionTemplate.execute(status -> sequenceRepository.advance(blockSize, SEQUENCE_NAME) == 0 ? null
+                : sequenceRepository.nextValue(SEQUENCE_NAME) - blockSize);
+    }
+}
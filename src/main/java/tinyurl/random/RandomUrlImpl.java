@@ -1,23 +1,14 @@
 package tinyurl.random;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.ThreadLocalRandom;
-
 @Service
+@ConditionalOnProperty(name = "tinyurl.short-url.generator", havingValue = "random", matchIfMissing = true)
 public class RandomUrlImpl implements RandomUrl {
-    private static final int SHORT_URL_LENGTH = 8;
-    private static final char[] chars = new char[]{'2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f', 'g',
-            'h', 'i', 'j', 'k', 'm', 'n', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z'
-    };
 
     @Override
     public String generate() {
-        ThreadLocalRandom random = ThreadLocalRandom.current();
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < SHORT_URL_LENGTH; i++) {
-            sb.append(chars[random.nextInt(chars.length)]);
-        }
-        return sb.toString();
+        return ShortUrlCodec.encode(ShortUrlCodec.random());
     }
 }
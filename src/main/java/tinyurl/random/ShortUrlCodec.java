@@ -0,0 +1,83 @@
+package tinyurl.random;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Maps 40 bit values to 8 character short urls, 5 bits per character, using a 32 symbol alphabet without the
+ * look-alike characters 0, 1, l and o. A short url packs into a single long, its key, which is what the urls table
+ * indexes. Apart from {@link #encode(long)} creating the string, nothing here allocates.
+ */
+public final class ShortUrlCodec {
+    static final int SHORT_URL_LENGTH = 8;
+    static final int BITS_PER_CHAR = 5;
+    static final long MAX_VALUE = (1L << (SHORT_URL_LENGTH * BITS_PER_CHAR)) - 1;
+    static final char[] ALPHABET = new char[]{'2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f', 'g',
+            'h', 'i', 'j', 'k', 'm', 'n', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z'
+    };
+    private static final int SYMBOL_MASK = ALPHABET.length - 1;
+    private static final byte[] SYMBOLS = new byte[128];
+
+    static {
+        Arrays.fill(SYMBOLS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            SYMBOLS[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private ShortUrlCodec() {
+    }
+
+    /**
+     * A uniformly random key.
+     */
+    public static long random() {
+        return ThreadLocalRandom.current().nextLong(MAX_VALUE + 1);
+    }
+
+    public static String encode(long key) {
+        char[] chars = new char[SHORT_URL_LENGTH];
+        encode(key, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Writes the short url of the key into {@code dest} starting at {@code offset}.
+     */
+    public static void encode(long key, char[] dest, int offset) {
+        if (key < 0 || key > MAX_VALUE) {
+            throw new IllegalArgumentException("Value out of the short url range: " + key);
+        }
+        for (int i = offset + SHORT_URL_LENGTH - 1; i >= offset; i--) {
+            dest[i] = ALPHABET[(int) (key & SYMBOL_MASK)];
+            key >>>= BITS_PER_CHAR;
+        }
+    }
+
+    /**
+     * Returns the key of a short url, or -1 if it isn't a valid short url.
+     */
+    public static long decode(CharSequence shortUrl) {
+        if (shortUrl == null || shortUrl.length() != SHORT_URL_LENGTH) {
+            return -1;
+        }
+        long key = 0;
+        for (int i = 0; i < SHORT_URL_LENGTH; i++) {
+            char c = shortUrl.charAt(i);
+            int symbol = c < SYMBOLS.length ? SYMBOLS[c] : -1;
+            if (symbol < 0) {
+                return -1;
+            }
+            key = (key << BITS_PER_CHAR) | symbol;
+        }
+        return key;
+    }
+
+    /**
+     * Whether the string has the length and alphabet of a short url. Checked before any lookup, so malformed paths
+     * never reach the database.
+     */
+    public static boolean isValid(CharSequence shortUrl) {
+        return decode(shortUrl) >= 0;
+    }
+}
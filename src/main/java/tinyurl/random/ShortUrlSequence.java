@@ -0,0 +1,34 @@
+package tinyurl.random;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Next unallocated value of a named sequence, handed out to nodes in blocks by {@link BlockRandomUrl}.
+ */
+@Entity
+@Table(name = "short_url_sequences")
+public class ShortUrlSequence {
+
+    @Id
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "next_value")
+    private long nextValue;
+
+    public ShortUrlSequence() {
+    }
+
+    public ShortUrlSequence(String name, long nextValue) {
+        this.name = name;
+        this.nextValue = nextValue;
+    }
+
+    @Override
+    public String toString() {
+        return "ShortUrlSequence{name='" + name + "', nextValue=" + nextValue + "}";
+    }
+}
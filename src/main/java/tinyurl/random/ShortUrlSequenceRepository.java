@@ -0,0 +1,25 @@
+package tinyurl.random;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ShortUrlSequenceRepository extends JpaRepository<ShortUrlSequence, String> {
+
+    @Modifying
+    @Query(value = "UPDATE short_url_sequences SET next_value=next_value+? WHERE name=?", nativeQuery = true)
+    int advance(long increment, String name);
+
+    /**
+     * Creates the sequence at 0 unless it exists, nodes starting together can all call this.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO short_url_sequences (name, next_value) VALUES (?, 0) ON DUPLICATE KEY UPDATE name=name",
+            nativeQuery = true)
+    int create(String name);
+
+    @Query(value = "SELECT next_value FROM short_url_sequences WHERE name=?", nativeQuery = true)
+    long nextValue(String name);
+}
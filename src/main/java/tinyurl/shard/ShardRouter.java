@@ -0,0 +1,110 @@
+package tinyurl.shard;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tinyurl.random.ShortUrlCodec;
+
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Places each url on one of {@code tinyurl.shards.count} shards with a jump consistent hash of its short key, so going
+ * from n to n + 1 shards moves only 1/(n + 1) of the urls. While {@link UrlResharder} moves urls to a new shard count,
+ * {@code tinyurl.shards.previous-count} is the count they are moved from.
+ * <p>
+ * The shard queries run on is held per thread and read by {@link ShardRoutingDataSource}.
+ */
+@Component
+public class ShardRouter {
+    private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+    private final int count;
+    private final int previousCount;
+
+    @Autowired
+    public ShardRouter(@Value("${tinyurl.shards.count:1}") int count,
+                       @Value("${tinyurl.shards.previous-count:${tinyurl.shards.count:1}}") int previousCount) {
+        if (count < 1 || previousCount < 1) {
+            throw new IllegalArgumentException("Shard counts must be positive.");
+        }
+        this.count = count;
+        this.previousCount = previousCount;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int previousCount() {
+        return previousCount;
+    }
+
+    public boolean isSharded() {
+        return count > 1 || previousCount > 1;
+    }
+
+    public boolean isResharding() {
+        return count != previousCount;
+    }
+
+    public int shardOf(String shortUrl) {
+        return jumpHash(hash(shortUrl), count);
+    }
+
+    public int previousShardOf(String shortUrl) {
+        return jumpHash(hash(shortUrl), previousCount);
+    }
+
+    /**
+     * Runs the action once on every shard holding urls, the shards of both counts while resharding.
+     */
+    public void forEachShard(IntConsumer action) {
+        for (int shard = 0; shard < Math.max(count, previousCount); shard++) {
+            int current = shard;
+            onShard(shard, () -> {
+                action.accept(current);
+                return null;
+            });
+        }
+    }
+
+    public static <T> T onShard(int shard, Supplier<T> action) {
+        Integer previous = CURRENT_SHARD.get();
+        CURRENT_SHARD.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) {
+                CURRENT_SHARD.set(previous);
+            } else {
+                CURRENT_SHARD.remove();
+            }
+        }
+    }
+
+    /**
+     * The shard set by an enclosing {@link #onShard} call, or null.
+     */
+    public static Integer currentShard() {
+        return CURRENT_SHARD.get();
+    }
+
+    static long hash(String shortUrl) {
+        long key = ShortUrlCodec.decode(shortUrl);
+        return key >= 0 ? key : shortUrl.hashCode() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm".
+     */
+    static int jumpHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+}
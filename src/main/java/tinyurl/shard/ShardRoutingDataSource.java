@@ -0,0 +1,14 @@
+package tinyurl.shard;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Hands out connections of the shard set with {@link ShardRouter#onShard}, shard 0 otherwise.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = ShardRouter.currentShard();
+        return shard != null ? shard : 0;
+    }
+}
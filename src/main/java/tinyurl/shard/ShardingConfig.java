@@ -0,0 +1,40 @@
+package tinyurl.shard;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.jdbc.core.JdbcTemplate;
+import tinyurl.UrlRepository;
+
+/**
+ * Adds the {@link UrlShardingInterceptor} in front of the other {@link UrlRepository} advice, so the shard is chosen
+ * before a transaction takes a connection.
+ */
+@Configuration
+public class ShardingConfig {
+
+    @Bean
+    public UrlShardingInterceptor urlShardingInterceptor(ShardRouter shardRouter, JdbcTemplate jdbcTemplate) {
+        return new UrlShardingInterceptor(shardRouter, jdbcTemplate);
+    }
+
+    @Bean
+    public static BeanPostProcessor urlRepositorySharding(ObjectProvider<UrlShardingInterceptor> interceptor) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean
+                        && factoryBean.getObjectType() == UrlRepository.class) {
+                    // resolved on first call, so creating the post processor doesn't initialize the jdbc template early
+                    MethodInterceptor advice = invocation -> interceptor.getObject().invoke(invocation);
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, information) -> proxyFactory.addAdvice(0, advice)));
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,144 @@
+package tinyurl.shard;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * While resharding, creates the urls table on shards other than shard 0 on startup, where Hibernate doesn't, and moves
+ * urls from their shard under {@code tinyurl.shards.previous-count} to their shard under {@code tinyurl.shards.count}.
+ * Once it has run, set previous-count to count. New shards therefore always start by raising count above
+ * previous-count, also when starting sharded from scratch.
+ * <p>
+ * A url is copied before it is deleted from its previous shard, and {@link UrlShardingInterceptor} looks on both, so the
+ * move can run while serving. A url conflicting with one created on its new shard in the meantime is left in place and
+ * logged.
+ */
+@Component
+public class UrlResharder implements ApplicationRunner {
+    static final String CREATE_TABLE_SQL = "CREATE TABLE IF NOT EXISTS urls (id BIGINT NOT NULL, "
+            + "short_url VARCHAR(255) NOT NULL, short_key BIGINT, long_url VARCHAR(255) NOT NULL, "
+            + "stats_opt_out BOOLEAN DEFAULT FALSE NOT NULL, long_url_hash BIGINT, expires_at_millis BIGINT, "
+            + "last_access_millis BIGINT, created_at TIMESTAMP(3) DEFAULT CURRENT_TIMESTAMP(3) NOT NULL, PRIMARY KEY (id), "
+            + "UNIQUE (short_url), UNIQUE (short_key), CONSTRAINT uk_urls_long_url_hash UNIQUE (long_url_hash), "
+            + "INDEX (created_at))";
+    private static final String PAGE_SQL = "SELECT id, short_url, short_key, long_url, stats_opt_out, long_url_hash, "
+            + "expires_at_millis, last_access_millis FROM urls WHERE id>? ORDER BY id LIMIT ?";
+    private static final String INSERT_SQL = "INSERT INTO urls (id, short_url, short_key, long_url, stats_opt_out, "
+            + "long_url_hash, expires_at_millis, last_access_millis) VALUES (?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE id=id";
+    private static final String MOVED_SQL = "SELECT id FROM urls WHERE id IN (:ids)";
+    private static final String DELETE_SQL = "DELETE FROM urls WHERE id IN (:ids)";
+    private static final Logger log = LogManager.getLogger();
+    private final ShardRouter shardRouter;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    @Value("${tinyurl.shards.reshard-on-startup:false}")
+    private boolean reshardOnStartup;
+    @Value("${tinyurl.shards.reshard-batch-size:1000}")
+    private int reshardBatchSize;
+
+    @Autowired
+    public UrlResharder(ShardRouter shardRouter, JdbcTemplate jdbcTemplate) {
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!shardRouter.isResharding()) {
+            return;
+        }
+        createTables();
+        if (reshardOnStartup) {
+            reshard();
+        }
+    }
+
+    /**
+     * Creates the urls table on every shard but shard 0, if missing.
+     */
+    private void createTables() {
+        shardRouter.forEachShard(shard -> {
+            if (shard > 0) {
+                jdbcTemplate.execute(CREATE_TABLE_SQL);
+            }
+        });
+    }
+
+    /**
+     * Moves every url not on its shard under the current count. Returns the number of urls moved.
+     */
+    public long reshard() {
+        long moved = 0;
+        for (int shard = 0; shard < shardRouter.previousCount(); shard++) {
+            moved += reshard(shard);
+        }
+        log.info("Moved {} urls from {} to {} shards.", moved, shardRouter.previousCount(), shardRouter.count());
+        return moved;
+    }
+
+    private long reshard(int fromShard) {
+        long moved = 0;
+        long lastId = 0;
+        List<Row> rows;
+        while (!(rows = page(fromShard, lastId)).isEmpty()) {
+            lastId = rows.get(rows.size() - 1).id();
+            Map<Integer, List<Row>> byShard = new HashMap<>();
+            for (Row row : rows) {
+                int shard = shardRouter.shardOf(row.shortUrl());
+                if (shard != fromShard) {
+                    byShard.computeIfAbsent(shard, s -> new ArrayList<>()).add(row);
+                }
+            }
+            for (Map.Entry<Integer, List<Row>> entry : byShard.entrySet()) {
+                moved += move(entry.getValue(), fromShard, entry.getKey());
+            }
+        }
+        return moved;
+    }
+
+    private List<Row> page(int shard, long afterId) {
+        return ShardRouter.onShard(shard, () -> jdbcTemplate.query(PAGE_SQL, (rs, i) -> new Row(
+                rs.getLong(1), rs.getString(2), (Long) rs.getObject(3), rs.getString(4), rs.getBoolean(5), (Long) rs.getObject(6),
+                (Long) rs.getObject(7), (Long) rs.getObject(8)), afterId, reshardBatchSize));
+    }
+
+    private int move(List<Row> rows, int fromShard, int toShard) {
+        List<Object[]> args = new ArrayList<>(rows.size());
+        rows.forEach(row -> args.add(new Object[]{row.id(), row.shortUrl(), row.shortKey(), row.longUrl(), row.statsOptOut(), row.longUrlHash(),
+                row.expiresAtMillis(), row.lastAccessMillis()}));
+        List<Long> ids = rows.stream().map(Row::id).toList();
+        Set<Long> copied = ShardRouter.onShard(toShard, () -> {
+            jdbcTemplate.batchUpdate(INSERT_SQL, args);
+            return new HashSet<>(namedJdbcTemplate.queryForList(MOVED_SQL, Map.of("ids", ids), Long.class));
+        });
+        if (copied.size() < ids.size()) {
+            rows.stream()
+                .filter(row -> !copied.contains(row.id()))
+                .forEach(row -> log.warn("Short url {} conflicts with a url on shard {}, left on shard {}.", row.shortUrl(), toShard, fromShard));
+        }
+        if (!copied.isEmpty()) {
+            ShardRouter.onShard(fromShard, () -> namedJdbcTemplate.update(DELETE_SQL, Map.of("ids", copied)));
+        }
+        return copied.size();
+    }
+
+    private record Row(long id, String shortUrl, Long shortKey, String longUrl, boolean statsOptOut, Long longUrlHash,
+                       Long expiresAtMillis, Long lastAccessMillis) {
+    }
+}
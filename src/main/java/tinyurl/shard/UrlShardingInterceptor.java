@@ -0,0 +1,221 @@
+package tinyurl.shard;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import tinyurl.Url;
+import tinyurl.random.ShortUrlCodec;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Runs {@link tinyurl.UrlRepository} calls on the shard of their {@link ShardKey} parameter or url argument. Calls with
+ * a collection of keys are split into one call per shard and the results concatenated, or added up for counts. Calls
+ * without a key run on the shard set with {@link ShardRouter#onShard}, shard 0 by default.
+ * <p>
+ * While resharding, lookups try the url's previous shard and then its new one, which finds urls not moved yet as well
+ * as urls moved in between the two reads. Deletes run on both shards, and creates go to the new shard once the short
+ * url is known not to exist on the previous one.
+ */
+public class UrlShardingInterceptor implements MethodInterceptor {
+    private static final String EXISTING_SQL = "SELECT short_url FROM urls WHERE short_url IN (:shortUrls)";
+    private final ShardRouter shardRouter;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public UrlShardingInterceptor(ShardRouter shardRouter, JdbcTemplate jdbcTemplate) {
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (!shardRouter.isSharded() || ShardRouter.currentShard() != null) {
+            return invocation.proceed();
+        }
+        Object[] args = invocation.getArguments();
+        int keyIndex = shardKeyIndex(invocation.getMethod(), args);
+        if (keyIndex < 0) {
+            return invocation.proceed();
+        }
+        ProxyMethodInvocation proxyInvocation = (ProxyMethodInvocation) invocation;
+        String name = invocation.getMethod().getName();
+        if (args[keyIndex] instanceof Collection<?> keys) {
+            return name.startsWith("find") ? findPartitioned(proxyInvocation, keyIndex, keys)
+                                           : writePartitioned(proxyInvocation, keyIndex, keys);
+        }
+        String shortUrl = shortUrlOf(args[keyIndex]);
+        int shard = shardRouter.shardOf(shortUrl);
+        int previousShard = shardRouter.previousShardOf(shortUrl);
+        if (previousShard == shard) {
+            return onShard(proxyInvocation, shard, args);
+        }
+        if (name.startsWith("find")) {
+            Object result = onShard(proxyInvocation, previousShard, args);
+            return result instanceof Optional<?> url && url.isPresent() ? result : onShard(proxyInvocation, shard, args);
+        }
+        if (name.startsWith("delete")) {
+            onShard(proxyInvocation, previousShard, args);
+            return onShard(proxyInvocation, shard, args);
+        }
+        if (!existing(previousShard, List.of(shortUrl)).isEmpty()) {
+            throw new DuplicateKeyException("Short url exists on shard " + previousShard + ": " + shortUrl);
+        }
+        return onShard(proxyInvocation, shard, args);
+    }
+
+    private Object findPartitioned(ProxyMethodInvocation invocation, int keyIndex, Collection<?> keys) throws Throwable {
+        Map<Integer, List<Object>> byShard = new TreeMap<>();
+        for (Object key : keys) {
+            String shortUrl = shortUrlOf(key);
+            byShard.computeIfAbsent(shardRouter.previousShardOf(shortUrl), shard -> new ArrayList<>()).add(key);
+            if (shardRouter.isResharding()) {
+                byShard.computeIfAbsent(shardRouter.shardOf(shortUrl), shard -> new ArrayList<>()).add(key);
+            }
+        }
+        // a url seen on both shards while it is being moved is returned once
+        Set<Object> results = new LinkedHashSet<>();
+        Set<String> found = new HashSet<>();
+        for (Map.Entry<Integer, List<Object>> entry : byShard.entrySet()) {
+            for (Object result : (Collection<?>) onShard(invocation, entry.getKey(), withArg(invocation, keyIndex, entry.getValue()))) {
+                if (!(result instanceof Url url) || found.add(url.getShortUrl())) {
+                    results.add(result);
+                }
+            }
+        }
+        return new ArrayList<>(results);
+    }
+
+    private Object writePartitioned(ProxyMethodInvocation invocation, int keyIndex, Collection<?> keys) throws Throwable {
+        Set<String> existing = new HashSet<>();
+        if (shardRouter.isResharding()) {
+            Map<Integer, List<String>> byPreviousShard = new TreeMap<>();
+            for (Object key : keys) {
+                String shortUrl = shortUrlOf(key);
+                int previousShard = shardRouter.previousShardOf(shortUrl);
+                if (previousShard != shardRouter.shardOf(shortUrl)) {
+                    byPreviousShard.computeIfAbsent(previousShard, shard -> new ArrayList<>()).add(shortUrl);
+                }
+            }
+            byPreviousShard.forEach((shard, shortUrls) -> existing.addAll(existing(shard, shortUrls)));
+        }
+        Map<Integer, List<Object>> byShard = new TreeMap<>();
+        for (Object key : keys) {
+            String shortUrl = shortUrlOf(key);
+            if (!existing.contains(shortUrl)) {
+                byShard.computeIfAbsent(shardRouter.shardOf(shortUrl), shard -> new ArrayList<>()).add(key);
+            }
+        }
+        Class<?> returnType = invocation.getMethod().getReturnType();
+        Object result = emptyResult(returnType);
+        for (Map.Entry<Integer, List<Object>> entry : byShard.entrySet()) {
+            result = combine(result, onShard(invocation, entry.getKey(), withArg(invocation, keyIndex, entry.getValue())));
+        }
+        return result;
+    }
+
+    /**
+     * The result of a write split over no shards, null for void. Counts add up and collections are concatenated.
+     */
+    private static Object emptyResult(Class<?> returnType) {
+        if (returnType == void.class || returnType == Void.class) {
+            return null;
+        }
+        if (returnType == int.class || returnType == Integer.class) {
+            return 0;
+        }
+        if (returnType == long.class || returnType == Long.class) {
+            return 0L;
+        }
+        if (returnType.isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<>();
+        }
+        throw new IllegalStateException("Can't combine " + returnType.getName() + " results of a write over shards.");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object combine(Object result, Object shardResult) {
+        if (result instanceof Integer count) {
+            return count + ((Number) shardResult).intValue();
+        }
+        if (result instanceof Long count) {
+            return count + ((Number) shardResult).longValue();
+        }
+        if (result instanceof List<?> results) {
+            ((List<Object>) results).addAll((Collection<?>) shardResult);
+        }
+        return result;
+    }
+
+    private List<String> existing(int shard, List<String> shortUrls) {
+        return ShardRouter.onShard(shard, () -> jdbcTemplate.queryForList(EXISTING_SQL, Map.of("shortUrls", shortUrls), String.class));
+    }
+
+    private static Object onShard(ProxyMethodInvocation invocation, int shard, Object[] args) throws Throwable {
+        MethodInvocation shardInvocation = invocation.invocableClone(args);
+        try {
+            return ShardRouter.onShard(shard, () -> {
+                try {
+                    return shardInvocation.proceed();
+                } catch (Throwable ex) {
+                    throw new ShardInvocationException(ex);
+                }
+            });
+        } catch (ShardInvocationException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static Object[] withArg(ProxyMethodInvocation invocation, int index, Object arg) {
+        Object[] args = invocation.getArguments().clone();
+        args[index] = arg;
+        return args;
+    }
+
+    private static int shardKeyIndex(Method method, Object[] args) {
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof ShardKey) {
+                    return i;
+                }
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Url) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String shortUrlOf(Object key) {
+        if (key instanceof Url url) {
+            return url.getShortUrl();
+        }
+        if (key instanceof Long shortKey) {
+            return ShortUrlCodec.encode(shortKey);
+        }
+        return (String) key;
+    }
+
+    private static class ShardInvocationException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ShardInvocationException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package tinyurl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+public class ClickSketchesTest {
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+    private static final long DAY = Duration.ofDays(1).toMillis();
+    private static final long NOW = 100 * DAY;
+
+    @Test
+    public void testUniqueVisitors() {
+        // given
+        ClickSketches sketches = new ClickSketches(true, Duration.ofHours(1), 100, 10);
+        Url url = new Url(1, "abcdefgh", "longUrl");
+
+        // when
+        for (int i = 0; i < 5000; i++) {
+            sketches.record(url, "10.0." + (i / 256) + "." + (i % 256), "agent", NOW - 3 * DAY);
+            sketches.record(url, "10.0." + (i / 256) + "." + (i % 256), "agent", NOW - 3 * DAY);
+        }
+        for (int i = 0; i < 1000; i++) {
+            sketches.record(url, "10.1." + (i / 256) + "." + (i % 256), "agent", NOW - HOUR);
+        }
+
+        // then
+        assertWithin(1000, sketches.uniqueVisitors(url.getId(), NOW - DAY));
+        assertWithin(6000, sketches.uniqueVisitors(url.getId(), NOW - 7 * DAY));
+        assertWithin(6000, sketches.uniqueVisitors(url.getId(), 0));
+        Assertions.assertEquals(0, sketches.uniqueVisitors(2, 0));
+    }
+
+    @Test
+    public void testUserAgents() {
+        // given
+        ClickSketches sketches = new ClickSketches(true, Duration.ofHours(1), 100, 10);
+        Url url = new Url(1, "abcdefgh", "longUrl");
+
+        // when
+        sketches.record(url, "10.0.0.1", "agent1", NOW);
+        sketches.record(url, "10.0.0.1", "agent2", NOW);
+        sketches.record(url, "10.0.0.1", "agent2", NOW);
+        sketches.record(url, "10.0.0.2", null, NOW);
+
+        // then
+        Assertions.assertEquals(3, sketches.uniqueVisitors(url.getId(), NOW - DAY));
+    }
+
+    @Test
+    public void testTopLinks() {
+        // given
+        ClickSketches sketches = new ClickSketches(true, Duration.ofHours(1), 100, 3);
+        Url hot = new Url(1, "hhhhhhhh", "longUrl");
+        Url warm = new Url(2, "wwwwwwww", "longUrl");
+        Url old = new Url(3, "dddddddd", "longUrl");
+
+        // when
+        for (int i = 0; i < 50; i++) {
+            sketches.record(old, "10.0.0.1", "agent", NOW - 3 * DAY);
+        }
+        for (int i = 0; i < 20; i++) {
+            sketches.record(hot, "10.0.0.1", "agent", NOW - 2 * HOUR);
+            sketches.record(hot, "10.0.0.1", "agent", NOW);
+        }
+        for (int i = 0; i < 10; i++) {
+            sketches.record(warm, "10.0.0.1", "agent", NOW);
+        }
+        for (int i = 0; i < 10; i++) {
+            sketches.record(new Url(10 + i, "ccccccc" + (char) ('a' + i), "longUrl"), "10.0.0.1", "agent", NOW);
+        }
+
+        // then
+        Assertions.assertEquals(List.of(new ClickSketches.TopLink("hhhhhhhh", 40), new ClickSketches.TopLink("wwwwwwww", 10)),
+                                sketches.topLinks(NOW - DAY, 2));
+        Assertions.assertEquals(List.of(new ClickSketches.TopLink("dddddddd", 50), new ClickSketches.TopLink("hhhhhhhh", 40)),
+                                sketches.topLinks(NOW - 7 * DAY, 2));
+        Assertions.assertEquals(new ClickSketches.TopLink("dddddddd", 50), sketches.topLinks(0, 1).get(0));
+
+        // when
+        sketches.invalidate(old);
+
+        // then
+        Assertions.assertEquals(new ClickSketches.TopLink("hhhhhhhh", 40), sketches.topLinks(0, 1).get(0));
+        Assertions.assertEquals(0, sketches.uniqueVisitors(old.getId(), 0));
+    }
+
+    @Test
+    public void testDisabled() {
+        // given
+        ClickSketches sketches = new ClickSketches(false, Duration.ofHours(1), 100, 10);
+        Url url = new Url(1, "abcdefgh", "longUrl");
+
+        // when
+        sketches.record(url, "10.0.0.1", "agent", NOW);
+
+        // then
+        Assertions.assertEquals(0, sketches.uniqueVisitors(url.getId(), 0));
+        Assertions.assertTrue(sketches.topLinks(0, 10).isEmpty());
+    }
+
+    @Test
+    public void testSparseHyperLogLog() {
+        // given
+        HyperLogLog sparse = new HyperLogLog(ClickSketches.PRECISION);
+        HyperLogLog dense = new HyperLogLog(ClickSketches.PRECISION);
+        for (int i = 0; i < 100; i++) {
+            sparse.add(ClickSketches.hash("visitor" + i));
+        }
+        for (int i = 0; i < 2000; i++) {
+            dense.add(ClickSketches.hash("other" + i));
+        }
+
+        // then
+        Assertions.assertEquals(100, sparse.estimate(), 3);
+
+        // when
+        HyperLogLog union = new HyperLogLog(ClickSketches.PRECISION);
+        union.merge(sparse);
+        union.merge(dense);
+        dense.merge(sparse);
+
+        // then
+        assertWithin(2100, union.estimate());
+        Assertions.assertEquals(union.estimate(), dense.estimate());
+
+        // when
+        union.clear();
+
+        // then
+        Assertions.assertEquals(0, union.estimate());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        // a few standard errors of the 1024 register sketch
+        Assertions.assertTrue(Math.abs(actual - expected) <= expected * 0.1, "Expected about " + expected + " but was " + actual);
+    }
+}
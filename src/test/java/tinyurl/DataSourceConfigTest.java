@@ -0,0 +1,112 @@
+package tinyurl;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.context.junit4.SpringRunner;
+import tinyurl.clicks.ClickWriter;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:primary;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "tinyurl.datasource.replica.url=" + DataSourceConfigTest.REPLICA_URL,
+        "tinyurl.datasource.replica.username=sa",
+        "tinyurl.datasource.replica.hikari.maximum-pool-size=3",
+        "tinyurl.datasource.stats.url=" + DataSourceConfigTest.STATS_URL,
+        "tinyurl.datasource.stats.username=sa",
+        "tinyurl.datasource.stats.hikari.maximum-pool-size=2"
+})
+@RunWith(SpringRunner.class)
+public class DataSourceConfigTest {
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    static final String STATS_URL = "jdbc:h2:mem:stats;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    private UrlRepository urlRepository;
+
+    @Autowired
+    private UrlStatRepository urlStatRepository;
+
+    @Autowired
+    private ClickWriter clickWriter;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private DbConcurrencyLimiter dbConcurrencyLimiter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final JdbcTemplate replicaJdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+    private final JdbcTemplate statsJdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(STATS_URL, "sa", ""));
+
+    @BeforeEach
+    public void before() {
+        urlRepository.deleteAll();
+        replicaJdbcTemplate.execute("DROP TABLE IF EXISTS urls");
+        replicaJdbcTemplate.execute("CREATE TABLE urls (id BIGINT PRIMARY KEY, short_url VARCHAR(255), "
+                                    + "short_key BIGINT, long_url VARCHAR(255), stats_opt_out BOOLEAN DEFAULT FALSE, "
+                                    + "long_url_hash BIGINT, expires_at_millis BIGINT, last_access_millis BIGINT, "
+                                    + "created_at TIMESTAMP(3) DEFAULT CURRENT_TIMESTAMP(3) NOT NULL)");
+    }
+
+    @Test
+    public void testReadsFromReplica() {
+        // given
+        Url url = urlRepository.save(new Url("abcdefgh", "primary_long_url"));
+        replicaJdbcTemplate.update("INSERT INTO urls (id, short_url, short_key, long_url) VALUES (?, ?, ?, ?)", url.getId(), url.getShortUrl(), url.getShortKey(),
+                                   "replica_long_url");
+
+        // when
+        String readLongUrl = urlRepository.findByShortUrl(url.getShortUrl()).get().getLongUrl();
+        String bulkReadLongUrl = urlRepository.findByShortUrlIn(List.of(url.getShortUrl())).get(0).getLongUrl();
+        String writtenLongUrl = jdbcTemplate.queryForObject("SELECT long_url FROM urls WHERE id=?", String.class, url.getId());
+
+        // then
+        Assertions.assertEquals("replica_long_url", readLongUrl);
+        Assertions.assertEquals("replica_long_url", bulkReadLongUrl);
+        Assertions.assertEquals("primary_long_url", writtenLongUrl);
+        DataSource replica = ((DataSourceConfig.ReadOnlyRoutingDataSource) ((LazyConnectionDataSourceProxy) dataSource)
+                .getTargetDataSource()).getResolvedDataSources().get(true);
+        Assertions.assertEquals(3, ((HikariDataSource) replica).getMaximumPoolSize());
+    }
+
+    @Test
+    public void testStatsInSeparateDatabase() {
+        // given
+        Url url = urlRepository.save(new Url("abcdefgh", "long_url"));
+
+        // when
+        clickWriter.write(new long[]{url.getId(), url.getId()}, new long[]{1, 2}, 2);
+
+        // then
+        Assertions.assertEquals(2, urlStatRepository.countBy(url.getId(), 0));
+        Assertions.assertEquals(2, statsJdbcTemplate.queryForObject("SELECT count(*) FROM url_stats WHERE url_id=?",
+                                                                    Long.class, url.getId()));
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject("SELECT count(*) FROM INFORMATION_SCHEMA.TABLES "
+                                                               + "WHERE LOWER(TABLE_NAME)='url_stats'", Long.class));
+
+        // when
+        clickWriter.delete(url.getId());
+
+        // then
+        Assertions.assertEquals(0, urlStatRepository.countBy(url.getId(), 0));
+    }
+
+    @Test
+    public void testDbConcurrencyLimiterSizedToStatsPool() {
+        // then
+        Assertions.assertEquals(2, dbConcurrencyLimiter.availablePermits());
+    }
+}
@@ -0,0 +1,43 @@
+package tinyurl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class HotKeysTest {
+
+    @Test
+    public void testHotKeys() {
+        // given
+        HotKeys hotKeys = new HotKeys(true, 2);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            hotKeys.record("hot");
+        }
+        for (int i = 0; i < 5; i++) {
+            hotKeys.record("warm");
+        }
+        hotKeys.record("cold1");
+        hotKeys.record("cold2");
+        List<HotKeys.HotKey> top = hotKeys.hotKeys();
+
+        // then
+        Assertions.assertEquals(2, top.size());
+        Assertions.assertEquals(new HotKeys.HotKey("hot", 10, 0), top.get(0));
+        Assertions.assertEquals(new HotKeys.HotKey("cold2", 7, 6), top.get(1));
+    }
+
+    @Test
+    public void testDisabled() {
+        // given
+        HotKeys hotKeys = new HotKeys(false, 2);
+
+        // when
+        hotKeys.record("hot");
+
+        // then
+        Assertions.assertTrue(hotKeys.hotKeys().isEmpty());
+    }
+}
@@ -0,0 +1,67 @@
+package tinyurl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tinyurl.shard.ShardRouter;
+
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LongUrlIndexTest {
+
+    @Test
+    public void testNormalize() {
+        Assertions.assertEquals("http://example.com", LongUrlIndex.normalize(" example.com "));
+        Assertions.assertEquals("http://example.com", LongUrlIndex.normalize("HTTP://Example.COM/"));
+        Assertions.assertEquals("https://example.com/Path?q=A", LongUrlIndex.normalize("https://EXAMPLE.com/Path?q=A"));
+        Assertions.assertEquals(LongUrlIndex.hash(LongUrlIndex.normalize("example.com")),
+                                LongUrlIndex.hash(LongUrlIndex.normalize("http://example.com/")));
+    }
+
+    @Test
+    public void testFind() {
+        // given
+        UrlRepository urlRepository = mock(UrlRepository.class);
+        UrlCache urlCache = mock(UrlCache.class);
+        LongUrlIndex index = new LongUrlIndex(true, 10, urlRepository, urlCache, new ShardRouter(1, 1));
+        long hash = LongUrlIndex.hash(LongUrlIndex.normalize("example.com"));
+        Url url = new Url("abcdefgh", "example.com", hash);
+
+        when(urlRepository.findByLongUrlHash(hash)).thenReturn(Optional.of(url));
+        when(urlCache.findByShortUrl("abcdefgh")).thenReturn(Optional.of(url));
+
+        // when
+        Optional<Url> first = index.find("example.com");
+        Optional<Url> second = index.find("http://example.com");
+
+        // then
+        Assertions.assertEquals(url, first.get());
+        Assertions.assertEquals(url, second.get());
+        verify(urlRepository, times(1)).findByLongUrlHash(anyLong());
+
+        // when
+        index.invalidate(url);
+        when(urlRepository.findByLongUrlHash(hash)).thenReturn(Optional.empty());
+
+        // then
+        Assertions.assertTrue(index.find("example.com").isEmpty());
+    }
+
+    @Test
+    public void testFindHashCollision() {
+        // given
+        UrlRepository urlRepository = mock(UrlRepository.class);
+        LongUrlIndex index = new LongUrlIndex(true, 10, urlRepository, mock(UrlCache.class), new ShardRouter(1, 1));
+        long hash = LongUrlIndex.hash(LongUrlIndex.normalize("example.com"));
+
+        when(urlRepository.findByLongUrlHash(hash)).thenReturn(Optional.of(new Url("abcdefgh", "example.org", hash)));
+
+        // then
+        Assertions.assertTrue(index.find("example.com").isEmpty());
+    }
+}
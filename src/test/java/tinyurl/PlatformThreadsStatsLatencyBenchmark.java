@@ -0,0 +1,7 @@
+package tinyurl;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "spring.threads.virtual.enabled=false")
+class PlatformThreadsStatsLatencyBenchmark extends StatsLatencyBenchmark {
+}
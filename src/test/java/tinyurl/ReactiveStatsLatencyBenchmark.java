@@ -0,0 +1,42 @@
+package tinyurl;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+import tinyurl.shard.ShardRouter;
+
+import java.time.Duration;
+
+/**
+ * The stats latency of the reactive profile, for comparison with the servlet stack on platform or virtual threads. The
+ * count queries complete after {@link #DB_LATENCY_MILLIS} without holding a thread, as R2DBC round trips would.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+                properties = {"spring.datasource.url=jdbc:h2:mem:reactive;MODE=MySQL", "spring.datasource.username=sa",
+                              "spring.r2dbc.url=r2dbc:h2:mem:///reactive?options=MODE=MySQL",
+                              "spring.r2dbc.username=sa", "spring.r2dbc.password="})
+@ActiveProfiles("reactive")
+class ReactiveStatsLatencyBenchmark extends StatsLatencyBenchmark {
+
+    @TestConfiguration
+    static class SlowReactiveStatsConfig {
+        @Bean
+        @Primary
+        ReactiveUrlRepository slowReactiveUrlRepository(ShardRouter shardRouter) {
+            return new ReactiveUrlRepository(shardRouter) {
+                @Override
+                public Mono<Url> findByShortUrl(String shortUrl) {
+                    return Mono.just(new Url(1, "abcdefgh", "longUrl"));
+                }
+
+                @Override
+                public Mono<Long> countBy(long urlId, long timestampMillis) {
+                    return Mono.delay(Duration.ofMillis(DB_LATENCY_MILLIS)).thenReturn(1L);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package tinyurl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import tinyurl.clicks.ClickPipeline;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static tinyurl.UrlController.URL_PREFIX;
+
+@SpringBootTest(properties = {"spring.datasource.url=jdbc:h2:mem:reactive;MODE=MySQL", "spring.datasource.username=sa",
+                              "spring.r2dbc.url=r2dbc:h2:mem:///reactive?options=MODE=MySQL",
+                              "spring.r2dbc.username=sa", "spring.r2dbc.password="})
+@ActiveProfiles("reactive")
+@AutoConfigureWebTestClient
+public class ReactiveUrlControllerTest {
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private UrlRepository urlRepository;
+
+    @SpyBean
+    private ClickPipeline clickPipeline;
+
+    @Test
+    void testCreateRedirectDelete() {
+        // when
+        String created = webTestClient.post().uri("/url")
+                                      .contentType(MediaType.APPLICATION_JSON)
+                                      .bodyValue(Map.of("longUrl", "www.example.com"))
+                                      .exchange()
+                                      .expectStatus().isCreated()
+                                      .expectBody(String.class).returnResult().getResponseBody();
+
+        // then
+        Assertions.assertNotNull(created);
+        Assertions.assertTrue(created.startsWith(URL_PREFIX));
+        String shortUrl = created.substring(URL_PREFIX.length());
+        Assertions.assertTrue(urlRepository.findByShortUrl(shortUrl).isPresent());
+        webTestClient.get().uri("/url/" + shortUrl)
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectHeader().exists(HttpHeaders.ETAG)
+                     .expectBody(String.class).isEqualTo("www.example.com");
+        webTestClient.get().uri("/urlStats/" + shortUrl)
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectBody()
+                     .jsonPath("$.length()").isEqualTo(3)
+                     .jsonPath("$[0].window").isEqualTo("DAY");
+
+        // when
+        webTestClient.delete().uri("/url/" + shortUrl)
+                     .exchange()
+                     .expectStatus().isNoContent();
+
+        // then
+        Assertions.assertFalse(urlRepository.findByShortUrl(shortUrl).isPresent());
+        webTestClient.get().uri("/url/" + shortUrl)
+                     .exchange()
+                     .expectStatus().isNotFound();
+    }
+
+    @Test
+    void testRedirectRecordsClicksOffTheEventLoop() {
+        // given
+        String created = webTestClient.post().uri("/url")
+                                      .contentType(MediaType.APPLICATION_JSON)
+                                      .bodyValue(Map.of("longUrl", "www.example.org"))
+                                      .exchange()
+                                      .expectStatus().isCreated()
+                                      .expectBody(String.class).returnResult().getResponseBody();
+        AtomicReference<String> thread = new AtomicReference<>();
+        doAnswer(invocation -> {
+            thread.set(Thread.currentThread().getName());
+            return invocation.callRealMethod();
+        }).when(clickPipeline).record(anyLong(), anyLong());
+
+        // when
+        webTestClient.get().uri("/url/" + created.substring(URL_PREFIX.length()))
+                     .exchange()
+                     .expectStatus().isOk();
+
+        // then
+        Assertions.assertTrue(thread.get().startsWith("boundedElastic"), thread.get());
+    }
+
+    @Test
+    void testCreateMissingLongUrl() {
+        // then
+        webTestClient.post().uri("/url")
+                     .contentType(MediaType.APPLICATION_JSON)
+                     .bodyValue(Map.of())
+                     .exchange()
+                     .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void testRedirectNotFound() {
+        // then
+        webTestClient.get().uri("/url/abcdefgh")
+                     .exchange()
+                     .expectStatus().isNotFound();
+        webTestClient.get().uri("/urlStats/not-valid")
+                     .exchange()
+                     .expectStatus().isNotFound();
+        webTestClient.delete().uri("/url/not-valid")
+                     .exchange()
+                     .expectStatus().isNotFound();
+    }
+}
@@ -0,0 +1,111 @@
+package tinyurl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import tinyurl.shard.ShardRouter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+@DataJpaTest
+@RunWith(SpringRunner.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ShortUrlFilter.class, ShardRouter.class})
+public class ShortUrlFilterTest {
+
+    @Autowired
+    private UrlRepository urlRepository;
+
+    @Autowired
+    private ShortUrlFilter shortUrlFilter;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @BeforeEach
+    public void before() {
+        urlRepository.deleteAll();
+        ReflectionTestUtils.setField(shortUrlFilter, "filter", null);
+        ReflectionTestUtils.setField(shortUrlFilter, "file", "");
+        ReflectionTestUtils.setField(shortUrlFilter, "batchSize", 2);
+    }
+
+    @Test
+    public void testLoad() {
+        // given
+        Assertions.assertTrue(shortUrlFilter.mightExist("abcdefgh"));
+        for (String shortUrl : new String[]{"abcdefgh", "bcdefghi", "cdefghij"}) {
+            urlRepository.save(new Url(shortUrl, "long_url"));
+        }
+
+        // when
+        shortUrlFilter.load();
+
+        // then
+        Assertions.assertTrue(shortUrlFilter.isLoaded());
+        Assertions.assertTrue(shortUrlFilter.mightExist("abcdefgh"));
+        Assertions.assertTrue(shortUrlFilter.mightExist("cdefghij"));
+        Assertions.assertFalse(shortUrlFilter.mightExist("defghijk"));
+
+        // when
+        urlRepository.save(new Url("defghijk", "long_url"));
+        Assertions.assertEquals(1, shortUrlFilter.refresh());
+
+        // then
+        Assertions.assertTrue(shortUrlFilter.mightExist("defghijk"));
+    }
+
+    @Test
+    public void testRefreshFindsUrlsByCreation() {
+        // given
+        for (String shortUrl : new String[]{"mnpqrstu", "nprstuvw", "pqrstuvw"}) {
+            urlRepository.save(new Url(shortUrl, "long_url"));
+        }
+        shortUrlFilter.load();
+
+        // when, ids follow the short urls, these sort below every url scanned so far
+        urlRepository.save(new Url("22222222", "long_url"));
+        urlRepository.save(new Url("abcdefgh", "long_url"));
+
+        // then
+        Assertions.assertEquals(2, shortUrlFilter.refresh());
+        Assertions.assertTrue(shortUrlFilter.mightExist("22222222"));
+        Assertions.assertTrue(shortUrlFilter.mightExist("abcdefgh"));
+        Assertions.assertEquals(0, shortUrlFilter.refresh());
+    }
+
+    @Test
+    public void testLoadFromFile(@TempDir Path dir) {
+        // given
+        Path file = dir.resolve("short_urls.filter");
+        ReflectionTestUtils.setField(shortUrlFilter, "file", file.toString());
+        urlRepository.save(new Url("bcdefghi", "long_url"));
+        shortUrlFilter.load();
+        Assertions.assertTrue(Files.exists(file));
+        urlRepository.save(new Url("abcdefgh", "long_url"));
+
+        // when
+        ShortUrlFilter loaded = new ShortUrlFilter();
+        ReflectionTestUtils.setField(loaded, "urlRepository", urlRepository);
+        ReflectionTestUtils.setField(loaded, "shardRouter", shardRouter);
+        ReflectionTestUtils.setField(loaded, "file", file.toString());
+        ReflectionTestUtils.setField(loaded, "batchSize", 2);
+        ReflectionTestUtils.setField(loaded, "refreshOverlap", Duration.ofMinutes(1));
+        loaded.load();
+
+        // then
+        Assertions.assertTrue(loaded.mightExist("abcdefgh"));
+        Assertions.assertTrue(loaded.mightExist("bcdefghi"));
+        Assertions.assertFalse(loaded.mightExist("cdefghij"));
+    }
+}
@@ -0,0 +1,108 @@
+package tinyurl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsShared() throws Exception {
+        // given
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>("test", Duration.ZERO, 10);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        singleFlight.bindTo(registry);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // when
+        List<Future<String>> results = new ArrayList<>();
+        results.add(executor.submit(() -> singleFlight.call(1L, () -> {
+            calls.incrementAndGet();
+            await(release);
+            return "stats";
+        })));
+        while (singleFlight.inFlight() == 0) {
+            Thread.onSpinWait();
+        }
+        for (int i = 0; i < 3; i++) {
+            results.add(executor.submit(() -> singleFlight.call(1L, () -> "again")));
+        }
+        while (registry.counter("tinyurl.single-flight.calls", "name", "test", "result", "shared").count() < 3) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        // then
+        for (Future<String> result : results) {
+            Assertions.assertEquals("stats", result.get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(0, singleFlight.inFlight());
+        Assertions.assertEquals("next", singleFlight.call(1L, () -> "next"));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testExceptionShared() throws Exception {
+        // given
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>("test", Duration.ZERO, 10);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        singleFlight.bindTo(registry);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // when
+        Future<String> leader = executor.submit(() -> singleFlight.call(1L, () -> {
+            await(release);
+            throw new IllegalStateException("failed");
+        }));
+        while (singleFlight.inFlight() == 0) {
+            Thread.onSpinWait();
+        }
+        Future<String> follower = executor.submit(() -> singleFlight.call(1L, () -> "again"));
+        while (registry.counter("tinyurl.single-flight.calls", "name", "test", "result", "shared").count() < 1) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        // then
+        for (Future<String> result : List.of(leader, follower)) {
+            Exception ex = Assertions.assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(IllegalStateException.class, ex.getCause());
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testMemoized() {
+        // given
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>("test", Duration.ofMinutes(1), 10);
+
+        // when
+        singleFlight.call(1L, () -> "first");
+
+        // then
+        Assertions.assertEquals("first", singleFlight.call(1L, () -> "second"));
+        Assertions.assertEquals("other", singleFlight.call(2L, () -> "other"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package tinyurl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+
+public class SnowflakeIdsTest {
+
+    @Test
+    public void testIdsIncrease() {
+        // given
+        SnowflakeIds snowflakeIds = new SnowflakeIds(5, Clock.systemUTC());
+        long[] ids = new long[10000];
+
+        // when
+        snowflakeIds.next(ids, ids.length);
+
+        // then
+        Set<Long> unique = new HashSet<>();
+        for (int i = 0; i < ids.length; i++) {
+            Assertions.assertTrue(unique.add(ids[i]));
+            Assertions.assertEquals(5, (ids[i] >>> SnowflakeIds.SEQUENCE_BITS) & SnowflakeIds.MAX_NODE_ID);
+            if (i > 0) {
+                Assertions.assertTrue(ids[i] > ids[i - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void testSequenceOverflow() {
+        // given
+        SteppingClock clock = new SteppingClock(Instant.parse("2025-01-01T00:00:00Z").toEpochMilli());
+        SnowflakeIds snowflakeIds = new SnowflakeIds(1, clock);
+        long[] ids = new long[4097];
+
+        // when
+        snowflakeIds.next(ids, 4096);
+        clock.stepAfter = 1;
+        ids[4096] = snowflakeIds.next();
+
+        // then
+        long shift = SnowflakeIds.NODE_BITS + SnowflakeIds.SEQUENCE_BITS;
+        Assertions.assertEquals(clock.start - SnowflakeIds.EPOCH_MILLIS, ids[4095] >>> shift);
+        Assertions.assertEquals(clock.start + 1 - SnowflakeIds.EPOCH_MILLIS, ids[4096] >>> shift);
+        Assertions.assertTrue(ids[4096] > ids[4095]);
+    }
+
+    @Test
+    public void testClockMovesBack() {
+        // given
+        SteppingClock clock = new SteppingClock(Instant.parse("2025-01-01T00:00:00Z").toEpochMilli());
+        SnowflakeIds snowflakeIds = new SnowflakeIds(1, clock);
+        long first = snowflakeIds.next();
+
+        // when
+        clock.millis = clock.start - 1000;
+        long second = snowflakeIds.next();
+
+        // then
+        Assertions.assertTrue(second > first);
+
+        // when
+        long[] ids = new long[4094];
+        snowflakeIds.next(ids, ids.length);
+
+        // then
+        Assertions.assertTrue(ids[ids.length - 1] > second);
+        Assertions.assertThrows(IllegalStateException.class, snowflakeIds::next);
+    }
+
+    @Test
+    public void testNodeIdRange() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SnowflakeIds(1024, Clock.systemUTC()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SnowflakeIds(-1, Clock.systemUTC()));
+    }
+
+    /**
+     * Stands still until read {@code stepAfter} times, then moves on a millisecond.
+     */
+    private static class SteppingClock extends Clock {
+        final long start;
+        long millis;
+        int stepAfter = Integer.MAX_VALUE;
+
+        SteppingClock(long start) {
+            this.start = start;
+            this.millis = start;
+        }
+
+        @Override
+        public long millis() {
+            if (--stepAfter < 0) {
+                millis++;
+                stepAfter = Integer.MAX_VALUE;
+            }
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
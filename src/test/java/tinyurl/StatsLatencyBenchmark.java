@@ -0,0 +1,111 @@
+package tinyurl;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fires concurrent /urlStats requests at a running server and prints latency percentiles. The stats queries block for
+ * {@link #DB_LATENCY_MILLIS}, standing in for JDBC round trips. Run with {@code gradle benchmark} on Java 21 to compare
+ * the platform and virtual thread modes.
+ */
+@Tag("benchmark")
+abstract class StatsLatencyBenchmark {
+    static final int CONCURRENCY = 400;
+    static final int REQUESTS = 4000;
+    static final long DB_LATENCY_MILLIS = 20;
+    @LocalServerPort
+    private int port;
+    @MockBean
+    private UrlRepository urlRepository;
+
+    @Test
+    void benchmarkUrlStats() throws Exception {
+        // given
+        when(urlRepository.findByShortUrl(anyString())).thenReturn(Optional.of(new Url(1, "abcdefgh", "longUrl")));
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/urlStats/abcdefgh")).build();
+        long[] latencies = new long[REQUESTS];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+
+        // when
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+        Future<?>[] futures = new Future<?>[CONCURRENCY];
+        long start = System.nanoTime();
+        for (int i = 0; i < CONCURRENCY; i++) {
+            futures[i] = clients.submit(() -> {
+                int n;
+                while ((n = next.getAndIncrement()) < REQUESTS) {
+                    long requestStart = System.nanoTime();
+                    try {
+                        if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (Exception ex) {
+                        failures.incrementAndGet();
+                    }
+                    latencies[n] = System.nanoTime() - requestStart;
+                }
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        clients.shutdown();
+
+        // then
+        Arrays.sort(latencies);
+        System.out.printf("%s: %d requests, concurrency %d, %.0f req/s, p50 %.1f ms, p99 %.1f ms, max %.1f ms, %d failures%n",
+                          getClass().getSimpleName(), REQUESTS, CONCURRENCY, REQUESTS / (elapsed / 1e9),
+                          millis(latencies, 0.50), millis(latencies, 0.99), millis(latencies, 1.0), failures.get());
+        Assertions.assertEquals(0, failures.get());
+    }
+
+    private static double millis(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Url stat repository whose count queries block like a JDBC call. A plain proxy rather than a mock, so the
+     * benchmark doesn't measure Mockito's invocation recording.
+     */
+    @TestConfiguration
+    static class SlowStatsConfig {
+        @Bean
+        @Primary
+        UrlStatRepository slowUrlStatRepository() {
+            return (UrlStatRepository) Proxy.newProxyInstance(UrlStatRepository.class.getClassLoader(),
+                                                              new Class<?>[]{UrlStatRepository.class}, (proxy, method, args) -> {
+                        if (!method.getName().equals("countBy")) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        Thread.sleep(DB_LATENCY_MILLIS);
+                        return 1L;
+                    });
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package tinyurl;
+
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+import tinyurl.random.RandomUrl;
+import tinyurl.shard.ShardRouter;
+
+import java.util.List;
+import java.util.Set;
+
+@DataJpaTest
+@RunWith(SpringRunner.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({UrlBatchCreator.class, UrlCache.class, ShortUrlFilter.class, ShardRouter.class})
+public class UrlBatchCreatorTest {
+
+    @MockBean
+    private RandomUrl randomUrl;
+
+    @MockBean
+    private UrlReaper urlReaper;
+
+    @Autowired
+    private UrlRepository urlRepository;
+
+    @Autowired
+    private UrlBatchCreator urlBatchCreator;
+
+    @BeforeEach
+    public void before() {
+        urlRepository.deleteAll();
+    }
+
+    @Test
+    public void testCreateRetriesCollisions() {
+        // given
+        urlRepository.save(new Url("existing", "long_url"));
+        when(randomUrl.generate()).thenReturn("shrt2222", "existing", "shrt2222", "shrt3333", "shrt4444");
+
+        // when
+        Url[] created = urlBatchCreator.create(List.of("long_url_1", "long_url_2", "long_url_3"));
+
+        // then
+        Assertions.assertEquals("shrt2222", created[0].getShortUrl());
+        Assertions.assertEquals("shrt3333", created[1].getShortUrl());
+        Assertions.assertEquals("shrt4444", created[2].getShortUrl());
+        Assertions.assertEquals("long_url_2", urlRepository.findByShortUrl("shrt3333").get().getLongUrl());
+        Assertions.assertEquals("long_url", urlRepository.findByShortUrl("existing").get().getLongUrl());
+        verify(urlReaper).purgeStale(List.of(created[0]));
+        verify(urlReaper).purgeStale(argThat(urls -> Set.copyOf(urls).equals(Set.of(created[1], created[2]))));
+    }
+
+    @Test
+    public void testCreateGivesUpAfterMaxAttempts() {
+        // given
+        urlRepository.save(new Url("existing", "long_url"));
+        when(randomUrl.generate()).thenReturn("shrt2222", "existing");
+
+        // when
+        Url[] created = urlBatchCreator.create(List.of("long_url_1", "long_url_2"));
+
+        // then
+        Assertions.assertEquals("shrt2222", created[0].getShortUrl());
+        Assertions.assertNull(created[1]);
+    }
+}
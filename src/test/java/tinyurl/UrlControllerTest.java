@@ -1,9 +1,14 @@
 package tinyurl;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -11,11 +16,17 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static tinyurl.UrlController.MAX_ATTEMPTS;
 import static tinyurl.UrlController.URL_PREFIX;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,41 +34,75 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import tinyurl.clicks.ClickPipeline;
+import tinyurl.clicks.ClickWriter;
 import tinyurl.random.RandomUrl;
+import tinyurl.shard.ShardRouter;
 
+import java.sql.Timestamp;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 @WebMvcTest(UrlController.class)
+@Import({UrlCache.class, HotKeys.class, ClickSketches.class, ShortUrlFilter.class, ShardRouter.class, UrlReaper.class})
 @RunWith(SpringRunner.class)
 public class UrlControllerTest {
     @MockBean
     private UrlRepository urlRepository;
     @MockBean
-    private UrlStatRepository urlStatRepository;
+    private ClickPipeline clickPipeline;
+    @MockBean
+    private ClickWriter clickWriter;
     @MockBean
     private RandomUrl randomUrl;
+    @MockBean
+    private UrlBatchCreator urlBatchCreator;
+    @MockBean
+    private LongUrlIndex longUrlIndex;
+    @MockBean
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private UrlCache urlCache;
+    @Autowired
+    private ShortUrlFilter shortUrlFilter;
+    @Autowired
+    private UrlReaper urlReaper;
+    @Autowired
+    private UrlController urlController;
     @Autowired
     private MockMvc mockMvc;
     @Autowired
     private ObjectMapper objectMapper;
     @Autowired
     private Clock clock;
+    @Autowired
+    private MeterRegistry meterRegistry;
 
+    @BeforeEach
+    void before() {
+        urlCache.invalidateAll();
+    }
 
     @Test
     void testCreate() throws Exception {
         // given
         Map<String, String> body = Map.of("longUrl", "http://www.example.com");
-        String shortUrl = "short";
+        String shortUrl = "shrtcdez";
         Url savedUrl = new Url(shortUrl, "longUrl");
 
         when(urlRepository.save(any(Url.class))).thenReturn(savedUrl);
@@ -68,30 +113,341 @@ public class UrlControllerTest {
                                               .content(objectMapper.writeValueAsString(body)))
                .andExpect(status().isCreated())
                .andExpect(content().string(URL_PREFIX + shortUrl));
+        // a deleted url with the same short url had the same id
+        verify(clickWriter).purge(List.of(savedUrl.getId()));
+    }
+
+    @Test
+    void testCreateDeduplicated() throws Exception {
+        // given
+        Map<String, String> body = Map.of("longUrl", "http://www.example.com");
+        Url existingUrl = new Url("abcdefgh", "http://www.example.com");
+        Url newUrl = new Url("shrtcdez", "http://www.example.com");
+
+        when(longUrlIndex.isEnabled()).thenReturn(true);
+        when(longUrlIndex.find("http://www.example.com")).thenReturn(Optional.empty(), Optional.of(existingUrl));
+        when(randomUrl.generate()).thenReturn(newUrl.getShortUrl());
+        // a concurrent create of the same long url inserted first
+        when(urlRepository.save(any(Url.class))).thenThrow(new DataIntegrityViolationException("duplicate"));
+
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.post("/url").contentType(MediaType.APPLICATION_JSON)
+                                              .content(objectMapper.writeValueAsString(body)))
+               .andExpect(status().isCreated())
+               .andExpect(content().string(URL_PREFIX + existingUrl.getShortUrl()));
+        verify(urlRepository).save(argThat(url -> url.getLongUrlHash() != null));
+        Assertions.assertEquals(1, meterRegistry.counter("tinyurl.create.deduplicated").count());
+    }
+
+    @Test
+    void testCreateHashCollision() throws Exception {
+        // given
+        Map<String, String> body = Map.of("longUrl", "http://www.example.com");
+        String shortUrl = "shrtcdez";
+
+        when(longUrlIndex.isEnabled()).thenReturn(true);
+        when(longUrlIndex.find("http://www.example.com")).thenReturn(Optional.empty());
+        when(randomUrl.generate()).thenReturn(shortUrl);
+        // a different long url with the same hash exists
+        when(urlRepository.save(any(Url.class))).thenAnswer(invocation -> {
+            Url url = invocation.getArgument(0);
+            if (url.getLongUrlHash() != null) {
+                throw new DataIntegrityViolationException("Duplicate entry for key 'urls.uk_urls_long_url_hash'");
+            }
+            return url;
+        });
+
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.post("/url").contentType(MediaType.APPLICATION_JSON)
+                                              .content(objectMapper.writeValueAsString(body)))
+               .andExpect(status().isCreated())
+               .andExpect(content().string(URL_PREFIX + shortUrl));
+        verify(urlRepository, times(2)).save(any(Url.class));
+    }
+
+    @Test
+    void testCreateShortUrlCollisionKeepsHash() throws Exception {
+        // given
+        Map<String, String> body = Map.of("longUrl", "http://www.example.com");
+        Url takenUrl = new Url("abcdefgh", "http://www.example.org");
+        Url newUrl = new Url("shrtcdez", "http://www.example.com");
+
+        when(longUrlIndex.isEnabled()).thenReturn(true);
+        when(longUrlIndex.find("http://www.example.com")).thenReturn(Optional.empty());
+        when(randomUrl.generate()).thenReturn(takenUrl.getShortUrl(), newUrl.getShortUrl());
+        when(urlRepository.save(any(Url.class)))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry 'abcdefgh' for key 'urls.short_url'"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.post("/url").contentType(MediaType.APPLICATION_JSON)
+                                              .content(objectMapper.writeValueAsString(body)))
+               .andExpect(status().isCreated())
+               .andExpect(content().string(URL_PREFIX + newUrl.getShortUrl()));
+        verify(urlRepository).save(argThat(url -> newUrl.getShortUrl().equals(url.getShortUrl())
+                && url.getLongUrlHash() != null));
+    }
+
+    @Test
+    void testCreateStatsOptOut() throws Exception {
+        // given
+        Map<String, Object> body = Map.of("longUrl", "http://www.example.com", "trackClicks", false);
+        String shortUrl = "shrtcdez";
+
+        when(urlRepository.save(any(Url.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(randomUrl.generate()).thenReturn(shortUrl);
+
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.post("/url").contentType(MediaType.APPLICATION_JSON)
+                                              .content(objectMapper.writeValueAsString(body)))
+               .andExpect(status().isCreated());
+        verify(urlRepository).save(argThat(Url::isStatsOptOut));
+    }
+
+    @Test
+    void testCreateExpiring() throws Exception {
+        // given
+        Map<String, String> body = Map.of("longUrl", "http://www.example.com", "expiresIn", "P30D");
+        String shortUrl = "shrtcdez";
+
+        when(longUrlIndex.isEnabled()).thenReturn(true);
+        when(urlRepository.save(any(Url.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(randomUrl.generate()).thenReturn(shortUrl);
+
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.post("/url").contentType(MediaType.APPLICATION_JSON)
+                                              .content(objectMapper.writeValueAsString(body)))
+               .andExpect(status().isCreated());
+        verify(urlRepository).save(argThat(url -> url.getLongUrlHash() == null
+                && url.getExpiresAtMillis() == clock.millis() + Duration.ofDays(30).toMillis()));
+        verify(longUrlIndex, never()).find(any());
+    }
+
+    @Test
+    void testCreateInvalidExpiresIn() throws Exception {
+        for (String expiresIn : new String[]{"30 days", "PT0S", "-P1D"}) {
+            // given
+            Map<String, String> body = Map.of("longUrl", "http://www.example.com", "expiresIn", expiresIn);
+
+            // then
+            mockMvc.perform(MockMvcRequestBuilders.post("/url").contentType(MediaType.APPLICATION_JSON)
+                                                  .content(objectMapper.writeValueAsString(body)))
+                   .andExpect(status().isBadRequest());
+        }
+        verify(urlRepository, never()).save(any(Url.class));
     }
 
     @Test
     void testRedirect() throws Exception {
         // given
-        Url savedUrl = new Url("shortUrl", "longUrl");
-        UrlStat urlStat = new UrlStat(savedUrl, clock.millis());
+        Url savedUrl = new Url(1, "abcdefgh", "longUrl");
 
         when(urlRepository.findByShortUrl(any(String.class))).thenReturn(Optional.of(savedUrl));
-        when(urlStatRepository.save(eq(urlStat))).thenReturn(urlStat);
+        when(clickPipeline.record(savedUrl.getId(), clock.millis())).thenReturn(true);
 
         // then
         mockMvc.perform(MockMvcRequestBuilders.get("/url/" + savedUrl.getShortUrl()))
                .andExpect(status().isOk())
                .andExpect(content().string(savedUrl.getLongUrl()));
-        verify(urlStatRepository).save(any());
-        verifyNoMoreInteractions(urlStatRepository);
+        verify(clickPipeline).record(savedUrl.getId(), clock.millis());
+        verifyNoMoreInteractions(clickPipeline);
+    }
+
+    @Test
+    void testRedirectExpired() throws Exception {
+        // given
+        Url expiredUrl = new Url("abcdefgh", "longUrl", false, clock.millis());
+
+        when(urlRepository.findByShortUrl(any(String.class))).thenReturn(Optional.of(expiredUrl));
+
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.get("/url/" + expiredUrl.getShortUrl()))
+               .andExpect(status().isNotFound());
+        verifyNoInteractions(clickPipeline);
+    }
+
+    @Test
+    void testRedirectLocation() throws Exception {
+        // given
+        Url savedUrl = new Url(1, "abcdefgh", "www.example.com");
+
+        when(urlRepository.findByShortUrl(eq(savedUrl.getShortUrl()))).thenReturn(Optional.of(savedUrl));
+        ReflectionTestUtils.setField(urlController, "redirectStatus", HttpStatus.FOUND);
+
+        try {
+            // then
+            mockMvc.perform(MockMvcRequestBuilders.get("/url/" + savedUrl.getShortUrl()))
+                   .andExpect(status().isFound())
+                   .andExpect(header().string(HttpHeaders.LOCATION, "http://www.example.com"))
+                   .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                   .andExpect(header().string(HttpHeaders.ETAG, savedUrl.getEtag()))
+                   .andExpect(content().string(""));
+            mockMvc.perform(MockMvcRequestBuilders.get("/url/" + savedUrl.getShortUrl())
+                                                  .header(HttpHeaders.IF_NONE_MATCH, savedUrl.getEtag()))
+                   .andExpect(status().isNotModified());
+            verify(clickPipeline, times(2)).record(savedUrl.getId(), clock.millis());
+        } finally {
+            ReflectionTestUtils.setField(urlController, "redirectStatus", HttpStatus.OK);
+        }
+    }
+
+    @Test
+    void testRedirectStatsOptOut() throws Exception {
+        // given
+        Url savedUrl = new Url("abcdefgh", "http://www.example.com", true);
+
+        when(urlRepository.findByShortUrl(eq(savedUrl.getShortUrl()))).thenReturn(Optional.of(savedUrl));
+        ReflectionTestUtils.setField(urlController, "permanentOptOuts", true);
+
+        try {
+            // then
+            mockMvc.perform(MockMvcRequestBuilders.get("/url/" + savedUrl.getShortUrl()))
+                   .andExpect(status().isMovedPermanently())
+                   .andExpect(header().string(HttpHeaders.LOCATION, "http://www.example.com"))
+                   .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "public, max-age=86400"));
+            verifyNoInteractions(clickPipeline);
+        } finally {
+            ReflectionTestUtils.setField(urlController, "permanentOptOuts", false);
+        }
+    }
+
+    @Test
+    void testShortUrlFilter() throws Exception {
+        // given
+        UrlRepository.ShortUrlRow existing = new UrlRepository.ShortUrlRow() {
+            @Override
+            public long getId() {
+                return 1;
+            }
+
+            @Override
+            public String getShortUrl() {
+                return "abcdefgh";
+            }
+
+            @Override
+            public Timestamp getCreatedAt() {
+                return new Timestamp(0);
+            }
+        };
+        when(urlRepository.findShortUrlsCreatedAfter(any(), anyLong(), anyInt())).thenReturn(List.of(existing), List.of());
+        when(randomUrl.generate()).thenReturn("abcdefgh", "bcdefghi");
+        when(urlRepository.save(any(Url.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        shortUrlFilter.rebuild();
+
+        try {
+            // then
+            mockMvc.perform(MockMvcRequestBuilders.get("/url/cdefghij"))
+                   .andExpect(status().isNotFound());
+            verify(urlRepository, never()).findByShortUrl(any());
+            mockMvc.perform(MockMvcRequestBuilders.post("/url")
+                                                  .contentType(MediaType.APPLICATION_JSON)
+                                                  .content("{\"longUrl\": \"longUrl\"}"))
+                   .andExpect(status().isCreated())
+                   .andExpect(content().string(URL_PREFIX + "bcdefghi"));
+            verify(urlRepository, times(1)).save(any(Url.class));
+            Assertions.assertTrue(shortUrlFilter.mightExist("bcdefghi"));
+        } finally {
+            ReflectionTestUtils.setField(shortUrlFilter, "filter", null);
+        }
+    }
+
+    @Test
+    void testRedirectCached() throws Exception {
+        // given
+        Url savedUrl = new Url(1, "abcdefgh", "longUrl");
+
+        when(urlRepository.findByShortUrl(eq(savedUrl.getShortUrl()))).thenReturn(Optional.of(savedUrl));
+        CacheStats initialStats = urlCache.stats();
+
+        // then
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(MockMvcRequestBuilders.get("/url/" + savedUrl.getShortUrl()))
+                   .andExpect(status().isOk())
+                   .andExpect(content().string(savedUrl.getLongUrl()));
+        }
+        verify(urlRepository, times(1)).findByShortUrl(savedUrl.getShortUrl());
+        CacheStats stats = urlCache.stats().minus(initialStats);
+        Assertions.assertEquals(2, stats.hitCount());
+        Assertions.assertEquals(1, stats.missCount());
+    }
+
+    @Test
+    void testRedirectNotFoundCached() throws Exception {
+        // given
+        when(urlRepository.findByShortUrl(any(String.class))).thenReturn(Optional.empty());
+
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.get("/url/unkn2wns"))
+               .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/url/unkn2wns"))
+               .andExpect(status().isNotFound());
+        verify(urlRepository, times(1)).findByShortUrl("unkn2wns");
+        verifyNoInteractions(clickPipeline);
+    }
+
+    @Test
+    void testRedirectInvalidShortUrl() throws Exception {
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.get("/url/not-a-short-url"))
+               .andExpect(status().isNotFound());
+        verifyNoInteractions(urlRepository);
+        verifyNoInteractions(clickPipeline);
+    }
+
+    @Test
+    void testDeleteInvalidShortUrl() throws Exception {
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.delete("/url/not-a-short-url"))
+               .andExpect(status().isNotFound());
+        verifyNoInteractions(urlRepository);
+        verifyNoInteractions(clickWriter);
+    }
+
+    @Test
+    void testDeleteInvalidatesCache() throws Exception {
+        // given
+        Url savedUrl = new Url(1, "abcdefgh", "longUrl");
+
+        when(urlRepository.findByShortUrl(eq(savedUrl.getShortUrl()))).thenReturn(Optional.of(savedUrl), Optional.empty());
+        when(urlRepository.findByShortUrlOnPrimary(savedUrl.getShortUrl())).thenReturn(Optional.of(savedUrl));
+        doNothing().when(urlRepository).deleteByShortUrl(any(String.class));
+
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.get("/url/" + savedUrl.getShortUrl()))
+               .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/url/" + savedUrl.getShortUrl()))
+               .andExpect(status().isNoContent());
+        mockMvc.perform(MockMvcRequestBuilders.get("/url/" + savedUrl.getShortUrl()))
+               .andExpect(status().isNotFound());
+        verify(urlRepository, times(2)).findByShortUrl(savedUrl.getShortUrl());
+        verify(clickPipeline).forget(savedUrl.getId(), clock.millis());
+        verify(clickWriter).delete(savedUrl.getId());
+    }
+
+    @Test
+    void testDeleteCachedMiss() throws Exception {
+        // given, a url the cache missed, say on a lagging replica
+        Url savedUrl = new Url(1, "abcdefgh", "longUrl");
+        when(urlRepository.findByShortUrl(savedUrl.getShortUrl())).thenReturn(Optional.empty());
+        when(urlRepository.findByShortUrlOnPrimary(savedUrl.getShortUrl())).thenReturn(Optional.of(savedUrl));
+        mockMvc.perform(MockMvcRequestBuilders.get("/url/" + savedUrl.getShortUrl()))
+               .andExpect(status().isNotFound());
+
+        // when
+        mockMvc.perform(MockMvcRequestBuilders.delete("/url/" + savedUrl.getShortUrl()))
+               .andExpect(status().isNoContent());
+
+        // then
+        verify(urlRepository).deleteByShortUrl(savedUrl.getShortUrl());
+        verify(clickWriter).delete(savedUrl.getId());
     }
 
     @Test
     void testDelete() throws Exception {
         // given
         Map<String, String> body = Map.of("longUrl", "http://www.example.com");
-        Url savedUrl = new Url("shortUrl", "longUrl");
+        Url savedUrl = new Url("abcdefgh", "longUrl");
 
         doNothing().when(urlRepository).deleteByShortUrl(any(String.class));
 
@@ -104,27 +460,53 @@ public class UrlControllerTest {
                .andExpect(status().isNoContent());
     }
 
+    @Test
+    void testSoftDelete() throws Exception {
+        // given
+        Url savedUrl = new Url("abcdefgh", "longUrl");
+        Url tombstonedUrl = new Url("abcdefgh", "longUrl", false, clock.millis());
+        ReflectionTestUtils.setField(urlReaper, "enabled", true);
+        ReflectionTestUtils.setField(urlReaper, "softDeletes", true);
+
+        when(urlRepository.findByShortUrlOnPrimary(savedUrl.getShortUrl())).thenReturn(Optional.of(savedUrl));
+        when(urlRepository.findByShortUrl(savedUrl.getShortUrl())).thenReturn(Optional.of(tombstonedUrl));
+
+        try {
+            // when
+            mockMvc.perform(MockMvcRequestBuilders.delete("/url/" + savedUrl.getShortUrl()))
+                   .andExpect(status().isNoContent());
+
+            // then
+            verify(urlRepository).deleteSoftly(savedUrl.getShortUrl(), clock.millis());
+            verify(urlRepository, never()).deleteByShortUrl(any(String.class));
+            verifyNoInteractions(clickWriter);
+            mockMvc.perform(MockMvcRequestBuilders.get("/url/" + savedUrl.getShortUrl()))
+                   .andExpect(status().isNotFound());
+        } finally {
+            ReflectionTestUtils.setField(urlReaper, "enabled", false);
+            ReflectionTestUtils.setField(urlReaper, "softDeletes", false);
+        }
+    }
+
     @Test
     void testRedirectUnavailable() throws Exception {
         // given
         Map<String, String> body = Map.of("longUrl", "http://www.example.com");
-        Url savedUrl = new Url("shortUrl", "longUrl");
-        UrlStat urlStat = new UrlStat(savedUrl, clock.millis());
+        Url savedUrl = new Url("abcdefgh", "longUrl");
 
         when(urlRepository.findByShortUrl(any(String.class))).thenThrow(new RuntimeException());
-        when(urlStatRepository.save(any())).thenReturn(urlStat);
 
         // then
         mockMvc.perform(MockMvcRequestBuilders.get("/url/" + savedUrl.getShortUrl()))
                .andExpect(status().isServiceUnavailable());
-        verifyNoInteractions(urlStatRepository);
+        verifyNoInteractions(clickPipeline);
     }
 
     @Test
     void testDeleteUnavailable() throws Exception {
         // given
         Map<String, String> body = Map.of("longUrl", "http://www.example.com");
-        Url savedUrl = new Url(1, "shortUrl", "longUrl");
+        Url savedUrl = new Url(1, "abcdefgh", "longUrl");
 
         doThrow(new RuntimeException()).when(urlRepository).deleteByShortUrl(any(String.class));
 
@@ -138,17 +520,19 @@ public class UrlControllerTest {
         // given
         Map<String, String> body = Map.of("longUrl", "http://www.example.com");
         String existingShortUrl = "existing";
-        String newShortUrl = "new";
+        String newShortUrl = "newcdefg";
         Url newUrl = new Url(newShortUrl, "longUrl");
 
         when(urlRepository.save(any())).thenThrow(new DataIntegrityViolationException("test")).thenReturn(newUrl);
         when(randomUrl.generate()).thenReturn(existingShortUrl, newShortUrl);
+        double collisions = meterRegistry.counter("tinyurl.create.collisions").count();
 
         // then
         mockMvc.perform(MockMvcRequestBuilders.post("/url").contentType(MediaType.APPLICATION_JSON)
                                               .content(objectMapper.writeValueAsString(body)))
                .andExpect(status().isCreated())
                .andDo(print());
+        Assertions.assertEquals(collisions + 1, meterRegistry.counter("tinyurl.create.collisions").count());
         verify(randomUrl, times(2)).generate();
         verify(urlRepository, times(2)).save(any());
         verifyNoMoreInteractions(randomUrl);
@@ -187,6 +571,7 @@ public class UrlControllerTest {
         // given
         Map<String, String> body = Map.of("longUrl", "http://www.example.com");
 
+        when(randomUrl.generate()).thenReturn("abcdefgh");
         when(urlRepository.save(any(Url.class))).thenThrow(new DataIntegrityViolationException("test"));
 
         // then
@@ -196,11 +581,77 @@ public class UrlControllerTest {
         verify(urlRepository, times(MAX_ATTEMPTS)).save(any());
     }
 
+    @Test
+    void testCreateBatch() throws Exception {
+        // given
+        List<Object> body = List.of("http://www.example.com", Map.of("longUrl", "http://www.example.org"), "",
+                                    "http://www.example.net");
+        when(urlBatchCreator.create(eq(List.of("http://www.example.com", "http://www.example.org", "http://www.example.net"))))
+                .thenReturn(new Url[]{new Url("shrt2222", "http://www.example.com"), null, new Url("shrt4444", "http://www.example.net")});
+
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.post("/url/batch").contentType(MediaType.APPLICATION_JSON)
+                                              .content(objectMapper.writeValueAsString(body)))
+               .andExpect(status().isOk())
+               .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+               .andExpect(content().string(String.join("\n",
+                       "{\"index\":0,\"longUrl\":\"http://www.example.com\",\"shortUrl\":\"" + URL_PREFIX + "shrt2222\"}",
+                       "{\"index\":1,\"longUrl\":\"http://www.example.org\",\"error\":\"Failed to create short url, please retry.\"}",
+                       "{\"index\":2,\"longUrl\":\"\",\"error\":\"Please provide a long url to be shortened.\"}",
+                       "{\"index\":3,\"longUrl\":\"http://www.example.net\",\"shortUrl\":\"" + URL_PREFIX + "shrt4444\"}")));
+    }
+
+    @Test
+    void testCreateBatchNdjsonInChunks() throws Exception {
+        // given
+        String body = "{\"longUrl\": \"http://www.example.com\"}\n{\"longUrl\": \"http://www.example.org\"}\n"
+                + "{\"longUrl\": \"http://www.example.net\"}\n";
+        when(urlBatchCreator.create(any())).thenAnswer(invocation -> ((List<String>) invocation.getArgument(0))
+                .stream().map(longUrl -> new Url("shrtcdez", longUrl)).toArray(Url[]::new));
+        ReflectionTestUtils.setField(urlController, "batchChunkSize", 2);
+
+        try {
+            // then
+            mockMvc.perform(MockMvcRequestBuilders.post("/url/batch").contentType(MediaType.APPLICATION_NDJSON).content(body))
+                   .andExpect(status().isOk())
+                   .andExpect(content().string(containsString("\"index\":2,\"longUrl\":\"http://www.example.net\"")));
+            verify(urlBatchCreator).create(List.of("http://www.example.com", "http://www.example.org"));
+            verify(urlBatchCreator).create(List.of("http://www.example.net"));
+        } finally {
+            ReflectionTestUtils.setField(urlController, "batchChunkSize", 500);
+        }
+    }
+
+    @Test
+    void testCreateBatchBadRequest() throws Exception {
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.post("/url/batch").contentType(MediaType.APPLICATION_JSON).content("[\"a\", "))
+               .andExpect(status().isBadRequest());
+        verifyNoInteractions(urlBatchCreator);
+    }
+
+    @Test
+    void testCreateBatchUnavailable() throws Exception {
+        // given
+        when(urlBatchCreator.create(any())).thenThrow(new RuntimeException());
+
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.post("/url/batch").contentType(MediaType.APPLICATION_JSON)
+                                              .content(objectMapper.writeValueAsString(List.of("http://www.example.com"))))
+               .andExpect(status().isOk())
+               .andExpect(content().string(containsString("Unable to create short url, please try again later.")));
+    }
+
     @TestConfiguration
     public static class Config {
         @Bean
         public Clock clock() {
             return Clock.fixed(Instant.now(), ZoneOffset.UTC);
         }
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
     }
 }
@@ -0,0 +1,57 @@
+package tinyurl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tinyurl.shard.ShardRouter;
+
+import java.util.Optional;
+
+@DataJpaTest
+@RunWith(SpringRunner.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({UrlLookup.class, ShardRouter.class})
+public class UrlLookupTest {
+
+    @Autowired
+    private UrlRepository urlRepository;
+
+    @Autowired
+    private UrlLookup urlLookup;
+
+    @BeforeEach
+    public void before() {
+        urlRepository.deleteAll();
+    }
+
+    @Test
+    public void testFindByShortUrl() {
+        // given
+        urlRepository.saveAndFlush(new Url("abcdefgh", "long_url_1", true));
+        urlRepository.saveAndFlush(new Url("bcdefghi", "long_url_2", 42L));
+
+        // when
+        Optional<Url> optOut = urlLookup.findByShortUrl("abcdefgh");
+        Optional<Url> deduplicated = urlLookup.findByShortKey("bcdefghi", Url.shortKey("bcdefghi"));
+
+        // then
+        Assertions.assertTrue(optOut.isPresent());
+        Assertions.assertEquals(new Url("abcdefgh", "long_url_1").getId(), optOut.get().getId());
+        Assertions.assertEquals("long_url_1", optOut.get().getLongUrl());
+        Assertions.assertTrue(optOut.get().isStatsOptOut());
+        Assertions.assertNull(optOut.get().getLongUrlHash());
+        Assertions.assertTrue(deduplicated.isPresent());
+        Assertions.assertEquals("bcdefghi", deduplicated.get().getShortUrl());
+        Assertions.assertFalse(deduplicated.get().isStatsOptOut());
+        Assertions.assertEquals(42L, deduplicated.get().getLongUrlHash());
+        Assertions.assertFalse(urlLookup.findByShortUrl("cdefghij").isPresent());
+        Assertions.assertFalse(TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+    }
+}
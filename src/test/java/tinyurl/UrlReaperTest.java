@@ -0,0 +1,160 @@
+package tinyurl;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import tinyurl.clicks.ClickWriter;
+import tinyurl.clicks.JdbcClickWriter;
+import tinyurl.shard.ShardRouter;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+@DataJpaTest
+@RunWith(SpringRunner.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({UrlReaper.class, UrlCache.class, LongUrlIndex.class, ClickSketches.class, JdbcClickWriter.class, ShardRouter.class,
+        DataSourceConfig.class})
+@TestPropertySource(properties = {"tinyurl.reaper.enabled=true", "tinyurl.reaper.unused-after=P30D",
+        "tinyurl.reaper.batch-size=2", "tinyurl.reaper.stats-chunk-size=2", "tinyurl.reaper.max-rows-per-second=1000000"})
+public class UrlReaperTest {
+    private static final long NOW = Instant.parse("2025-06-01T00:00:00Z").toEpochMilli();
+
+    @Autowired
+    private UrlRepository urlRepository;
+
+    @Autowired
+    private UrlStatRepository urlStatRepository;
+
+    @Autowired
+    private UrlReaper urlReaper;
+
+    @Autowired
+    private ClickWriter clickWriter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void before() {
+        urlRepository.deleteAll();
+        urlStatRepository.deleteAll();
+    }
+
+    @Test
+    public void testReap() {
+        // given
+        Url expired = urlRepository.save(new Url("abcdefgh", "long_url", false, NOW - 1));
+        Url expiring = urlRepository.save(new Url("bcdefghi", "long_url", false, NOW + 1));
+        Url unused = urlRepository.save(new Url("cdefghij", "long_url"));
+        Url used = urlRepository.save(new Url("defghijk", "long_url"));
+        Url untracked = urlRepository.save(new Url("efghijkm", "long_url"));
+        urlRepository.updateLastAccess(List.of(unused.getShortUrl(), expiring.getShortUrl()),
+                                       NOW - Duration.ofDays(31).toMillis());
+        urlRepository.updateLastAccess(List.of(used.getShortUrl()), NOW - Duration.ofDays(1).toMillis());
+        for (Url url : List.of(expired, expiring, unused)) {
+            urlStatRepository.insertBatch(new long[]{url.getId(), url.getId(), url.getId()}, new long[]{NOW - 3, NOW - 2, NOW - 1}, 3);
+        }
+
+        // when
+        long reaped = urlReaper.reap();
+
+        // then
+        Assertions.assertEquals(3, reaped);
+        Assertions.assertEquals(List.of(used.getShortUrl(), untracked.getShortUrl()),
+                                jdbcTemplate.queryForList("SELECT short_url FROM urls ORDER BY id", String.class));
+        Assertions.assertEquals(0, urlStatRepository.countBy(expired.getId(), 0));
+        Assertions.assertEquals(0, urlStatRepository.countBy(unused.getId(), 0));
+        // urls created before access tracking count as used now
+        Assertions.assertEquals(NOW, lastAccessMillis(untracked));
+    }
+
+    @Test
+    public void testReapSoftDeleted() {
+        // given
+        Url url = urlRepository.save(new Url("abcdefgh", "long_url", LongUrlIndex.hash("long_url")));
+        urlStatRepository.insertBatch(new long[]{url.getId(), url.getId(), url.getId()}, new long[]{NOW - 3, NOW - 2, NOW - 1}, 3);
+
+        // when
+        urlRepository.deleteSoftly(url.getShortUrl(), NOW);
+
+        // then
+        Assertions.assertNull(jdbcTemplate.queryForObject("SELECT long_url_hash FROM urls WHERE id=?", Long.class, url.getId()));
+        Assertions.assertEquals(3, urlStatRepository.countBy(url.getId(), 0));
+
+        // when
+        long reaped = urlReaper.reap();
+
+        // then
+        Assertions.assertEquals(1, reaped);
+        Assertions.assertEquals(0, urlRepository.count());
+        Assertions.assertEquals(0, urlStatRepository.countBy(url.getId(), 0));
+    }
+
+    @Test
+    public void testReapDeletesClicksFirst() {
+        // given
+        Url url = urlRepository.save(new Url("abcdefgh", "long_url", false, NOW - 1));
+        urlStatRepository.insertBatch(new long[]{url.getId(), url.getId(), url.getId()}, new long[]{NOW - 3, NOW - 2, NOW - 1}, 3);
+        ClickWriter failingClickWriter = mock(ClickWriter.class);
+        when(failingClickWriter.delete(anyLong(), anyInt())).thenReturn(2).thenThrow(new RuntimeException("stats database down"));
+
+        // when
+        ReflectionTestUtils.setField(urlReaper, "clickWriter", failingClickWriter);
+        try {
+            Assertions.assertThrows(RuntimeException.class, () -> urlReaper.reap());
+        } finally {
+            ReflectionTestUtils.setField(urlReaper, "clickWriter", clickWriter);
+        }
+
+        // then the url is left for the next run
+        Assertions.assertEquals(1, urlRepository.count());
+        Assertions.assertEquals(1, urlReaper.reap());
+        Assertions.assertEquals(0, urlRepository.count());
+        Assertions.assertEquals(0, urlStatRepository.countBy(url.getId(), 0));
+    }
+
+    @Test
+    public void testFlushAccesses() {
+        // given
+        Url url = urlRepository.save(new Url("abcdefgh", "long_url"));
+        urlReaper.recordAccess(url, NOW - 1);
+
+        // when
+        urlReaper.flushAccesses();
+
+        // then
+        Assertions.assertEquals(NOW, lastAccessMillis(url));
+    }
+
+    private long lastAccessMillis(Url url) {
+        return jdbcTemplate.queryForObject("SELECT last_access_millis FROM urls WHERE id=?", Long.class, url.getId());
+    }
+
+    @TestConfiguration
+    public static class Config {
+        @Bean
+        public Clock clock() {
+            return Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC);
+        }
+    }
+}
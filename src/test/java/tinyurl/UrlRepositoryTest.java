@@ -8,9 +8,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @DataJpaTest
 @RunWith(SpringRunner.class)
@@ -20,6 +24,9 @@ public class UrlRepositoryTest {
     @Autowired
     private UrlRepository urlRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @BeforeEach
     public void before() {
         urlRepository.deleteAll();
@@ -28,7 +35,7 @@ public class UrlRepositoryTest {
     @Test
     public void testFindByShortUrl() {
         // given
-        String shortUrl = "short_url";
+        String shortUrl = "abcdefgh";
         String longUrl = "long_url";
         urlRepository.save(new Url(shortUrl, longUrl));
 
@@ -45,7 +52,7 @@ public class UrlRepositoryTest {
     @Test
     public void testDeleteByShortUrl() {
         // given
-        String shortUrl = "short_url";
+        String shortUrl = "abcdefgh";
         String longUrl = "long_url";
         urlRepository.save(new Url(shortUrl, longUrl));
 
@@ -60,12 +67,65 @@ public class UrlRepositoryTest {
     @Test
     public void testSaveExistingShortUrl() {
         // given
-        String shortUrl = "short_url";
+        String shortUrl = "abcdefgh";
         String longUrl = "long_url";
         urlRepository.save(new Url(shortUrl, longUrl));
 
         // when
-        Assertions.assertThrows(DataIntegrityViolationException.class, () -> urlRepository.save(new Url(shortUrl, "new long_url")));
+        DataIntegrityViolationException ex = Assertions.assertThrows(DataIntegrityViolationException.class,
+                () -> urlRepository.save(new Url(shortUrl, "new long_url")));
+
+        // then
+        Assertions.assertFalse(LongUrlIndex.isHashTaken(ex));
+    }
+
+    @Test
+    public void testSaveExistingLongUrlHash() {
+        // given
+        long longUrlHash = LongUrlIndex.hash(LongUrlIndex.normalize("example.com"));
+        urlRepository.save(new Url("abcdefgh", "example.com", longUrlHash));
+
+        // when
+        Optional<Url> url = urlRepository.findByLongUrlHash(longUrlHash);
 
+        // then
+        Assertions.assertEquals("abcdefgh", url.get().getShortUrl());
+        DataIntegrityViolationException ex = Assertions.assertThrows(DataIntegrityViolationException.class,
+                () -> urlRepository.save(new Url("bcdefghi", "http://EXAMPLE.com/", longUrlHash)));
+        Assertions.assertTrue(LongUrlIndex.isHashTaken(ex));
+    }
+
+    @Test
+    public void testInsertBatch() {
+        // given
+        urlRepository.save(new Url("existing", "long_url"));
+
+        // when
+        urlRepository.insertBatch(List.of(new Url("defghijk", "long_url_1"), new Url("existing", "long_url_2"),
+                                          new Url("efghijkm", "long_url_3")));
+        List<Url> urls = urlRepository.findByShortUrlIn(List.of("defghijk", "existing", "efghijkm", "invalid"));
+
+        // then
+        Assertions.assertEquals(3, urls.size());
+        Assertions.assertEquals(Map.of("defghijk", "long_url_1", "existing", "long_url", "efghijkm", "long_url_3"),
+                                urls.stream().collect(Collectors.toMap(Url::getShortUrl, Url::getLongUrl)));
+    }
+
+    @Test
+    public void testFillShortKeys() {
+        // given
+        Url url = urlRepository.save(new Url("abcdefgh", "long_url"));
+        urlRepository.save(new Url("bcdefghi", "long_url"));
+        jdbcTemplate.update("UPDATE urls SET short_key=NULL");
+
+        // when
+        Optional<Url> beforeFill = urlRepository.findByShortKey(url.getShortKey());
+        long lastId = urlRepository.fillShortKeys(0, 10);
+        long nextLastId = urlRepository.fillShortKeys(lastId, 10);
+
+        // then
+        Assertions.assertTrue(beforeFill.isEmpty());
+        Assertions.assertEquals("abcdefgh", urlRepository.findByShortKey(url.getShortKey()).get().getShortUrl());
+        Assertions.assertEquals(-1, nextLastId);
     }
 }
@@ -0,0 +1,136 @@
+package tinyurl;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class UrlSnapshotTest {
+    private static final long NOW = Instant.parse("2025-06-01T00:00:00Z").toEpochMilli();
+
+    @Test
+    public void testWriteRead(@TempDir Path dir) throws IOException {
+        // given
+        Path file = dir.resolve("urls.snapshot");
+        Url plain = new Url("abcdefgh", "http://www.example.com/é");
+        Url full = new Url(42, "bcdefghi", "example.org", true, 7L, 1000L, 2000L);
+
+        // when
+        UrlSnapshot.write(file, List.of(plain, full));
+        Map<String, Url> urls = UrlSnapshot.read(file);
+
+        // then
+        Assertions.assertEquals(List.of("abcdefgh", "bcdefghi"), List.copyOf(urls.keySet()));
+        Url read = urls.get("abcdefgh");
+        Assertions.assertEquals(plain.getId(), read.getId());
+        Assertions.assertEquals(plain.getLongUrl(), read.getLongUrl());
+        Assertions.assertFalse(read.isStatsOptOut());
+        Assertions.assertNull(read.getLongUrlHash());
+        Assertions.assertNull(read.getExpiresAtMillis());
+        read = urls.get("bcdefghi");
+        Assertions.assertEquals(42, read.getId());
+        Assertions.assertTrue(read.isStatsOptOut());
+        Assertions.assertEquals(7L, read.getLongUrlHash());
+        Assertions.assertEquals(1000L, read.getExpiresAtMillis());
+        Assertions.assertEquals(2000L, read.getLastAccessMillis());
+        Assertions.assertFalse(Files.exists(dir.resolve("urls.snapshot.tmp")));
+    }
+
+    @Test
+    public void testReadCorrupt(@TempDir Path dir) throws IOException {
+        // given
+        Path file = dir.resolve("urls.snapshot");
+        UrlSnapshot.write(file, List.of(new Url("abcdefgh", "example.com")));
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[20] ^= 1;
+        Files.write(file, bytes);
+
+        // then
+        Assertions.assertThrows(IOException.class, () -> UrlSnapshot.read(file));
+        Files.write(file, new byte[]{1, 2, 3});
+        Assertions.assertThrows(IOException.class, () -> UrlSnapshot.read(file));
+    }
+
+    @Test
+    public void testWarmStartAndStaleReads(@TempDir Path dir) {
+        // given
+        Path file = dir.resolve("urls.snapshot");
+        Url hot = new Url("abcdefgh", "example.com");
+        UrlRepository urlRepository = mock(UrlRepository.class);
+        when(urlRepository.findByShortUrl("abcdefgh")).thenReturn(Optional.of(hot));
+        UrlCache urlCache = urlCache(urlRepository, file);
+        urlCache.findByShortUrl("abcdefgh");
+        urlCache.saveSnapshot();
+
+        // when
+        UrlRepository restartedRepository = mock(UrlRepository.class);
+        UrlCache restarted = urlCache(restartedRepository, file);
+        restarted.loadSnapshot();
+
+        // then
+        Assertions.assertEquals(hot.getLongUrl(), restarted.findByShortUrl("abcdefgh").orElseThrow().getLongUrl());
+        verify(restartedRepository, never()).findByShortUrl(any());
+
+        // when
+        restarted.invalidateAll();
+        when(restartedRepository.findByShortUrl(any())).thenThrow(new RuntimeException("database down"));
+
+        // then
+        Assertions.assertEquals(hot.getLongUrl(), restarted.findByShortUrl("abcdefgh").orElseThrow().getLongUrl());
+        Assertions.assertThrows(RuntimeException.class, () -> restarted.findByShortUrl("bcdefghi"));
+    }
+
+    @Test
+    public void testNoStaleReadsOfDeletedOrExpiredUrls(@TempDir Path dir) {
+        // given
+        Path file = dir.resolve("urls.snapshot");
+        Url deleted = new Url("abcdefgh", "example.com");
+        Url expired = new Url("bcdefghi", "example.org", false, NOW - 1);
+        UrlRepository urlRepository = mock(UrlRepository.class);
+        when(urlRepository.findByShortUrl("abcdefgh")).thenReturn(Optional.of(deleted));
+        when(urlRepository.findByShortUrl("bcdefghi")).thenReturn(Optional.of(expired));
+        UrlCache urlCache = urlCache(urlRepository, file);
+        urlCache.findByShortUrl("abcdefgh");
+        urlCache.findByShortUrl("bcdefghi");
+        urlCache.saveSnapshot();
+
+        // when
+        urlCache.invalidate("abcdefgh");
+        when(urlRepository.findByShortUrl(any())).thenThrow(new RuntimeException("database down"));
+
+        // then
+        Assertions.assertThrows(RuntimeException.class, () -> urlCache.findByShortUrl("abcdefgh"));
+
+        // when
+        UrlCache restarted = urlCache(urlRepository, file);
+        restarted.loadSnapshot();
+
+        // then
+        Assertions.assertThrows(RuntimeException.class, () -> restarted.findByShortUrl("bcdefghi"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static UrlCache urlCache(UrlRepository urlRepository, Path file) {
+        ObjectProvider<Clock> clock = mock(ObjectProvider.class);
+        when(clock.getIfAvailable(any())).thenReturn(Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC));
+        return new UrlCache(urlRepository, mock(ObjectProvider.class), clock, 100, Duration.ofMinutes(10),
+                            Duration.ofSeconds(30), false, false, file.toString(), 100, true);
+    }
+}
@@ -0,0 +1,50 @@
+package tinyurl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@DataJpaTest
+@RunWith(SpringRunner.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({UrlStatForeignKeys.class, DataSourceConfig.class})
+public class UrlStatForeignKeysTest {
+
+    @Autowired
+    private UrlRepository urlRepository;
+
+    @Autowired
+    private UrlStatRepository urlStatRepository;
+
+    @Autowired
+    private UrlStatForeignKeys urlStatForeignKeys;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testDrop() {
+        // given, the foreign keys of a database created with url_id mapped as a relation
+        jdbcTemplate.execute("ALTER TABLE url_stats ADD CONSTRAINT FK_url_stats_url FOREIGN KEY (url_id) "
+                             + "REFERENCES urls (id) ON DELETE CASCADE");
+        jdbcTemplate.execute("ALTER TABLE url_stat_rollups ADD CONSTRAINT FK_url_stat_rollups_url FOREIGN KEY (url_id) "
+                             + "REFERENCES urls (id) ON DELETE CASCADE");
+        Url url = urlRepository.save(new Url("abcdefgh", "long_url"));
+        urlStatRepository.insertBatch(new long[]{url.getId()}, new long[]{1000}, 1);
+
+        // when
+        int dropped = urlStatForeignKeys.drop();
+        urlRepository.deleteByShortUrl(url.getShortUrl());
+
+        // then
+        Assertions.assertEquals(2, dropped);
+        Assertions.assertEquals(0, urlStatForeignKeys.drop());
+        Assertions.assertEquals(1, urlStatRepository.countBy(url.getId(), 0));
+    }
+}
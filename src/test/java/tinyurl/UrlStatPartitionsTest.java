@@ -0,0 +1,75 @@
+package tinyurl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class UrlStatPartitionsTest {
+    private static final long DAY = Duration.ofDays(1).toMillis();
+    private static final long NOW = Instant.parse("2026-10-18T12:00:00Z").toEpochMilli();
+    private static final long TODAY = Instant.parse("2026-10-18T00:00:00Z").toEpochMilli();
+
+    private UrlStatPartitions partitions(Duration retention) {
+        UrlStatPartitions partitions = new UrlStatPartitions();
+        ReflectionTestUtils.setField(partitions, "period", Duration.ofDays(1));
+        ReflectionTestUtils.setField(partitions, "ahead", 2);
+        ReflectionTestUtils.setField(partitions, "retention", retention);
+        return partitions;
+    }
+
+    @Test
+    public void testPartitionTable() {
+        // when
+        List<String> statements = partitions(Duration.ofDays(9)).statements(Map.of(), NOW);
+
+        // then
+        Assertions.assertEquals(2, statements.size());
+        Assertions.assertEquals("ALTER TABLE url_stats DROP PRIMARY KEY, ADD PRIMARY KEY (id, timestamp_millis)", statements.get(0));
+        Assertions.assertTrue(statements.get(1).startsWith("ALTER TABLE url_stats PARTITION BY RANGE (timestamp_millis) ("
+                                                           + "PARTITION p20261009 VALUES LESS THAN (" + (TODAY - 8 * DAY) + "), "));
+        Assertions.assertTrue(statements.get(1).endsWith("PARTITION p20261020 VALUES LESS THAN (" + (TODAY + 3 * DAY) + "), "
+                                                         + "PARTITION pmax VALUES LESS THAN MAXVALUE)"));
+    }
+
+    @Test
+    public void testPeriodUnderADay() {
+        // given
+        UrlStatPartitions partitions = partitions(Duration.ofDays(9));
+        ReflectionTestUtils.setField(partitions, "enabled", true);
+        ReflectionTestUtils.setField(partitions, "period", Duration.ofHours(12));
+
+        // then
+        Assertions.assertThrows(IllegalStateException.class, () -> partitions.run(null));
+    }
+
+    @Test
+    public void testAddAndDropPartitions() {
+        // given
+        Map<String, Long> existing = new LinkedHashMap<>();
+        existing.put("p20260901", TODAY - 46 * DAY);
+        existing.put("p20260902", TODAY - 45 * DAY);
+        existing.put("p20261017", TODAY);
+        existing.put("p20261018", TODAY + DAY);
+        existing.put("pmax", Long.MAX_VALUE);
+
+        // when
+        // a retention shorter than the week window is raised to cover it
+        List<String> statements = partitions(Duration.ofDays(1)).statements(existing, NOW);
+
+        // then
+        Assertions.assertEquals(List.of(
+                "ALTER TABLE url_stats REORGANIZE PARTITION pmax INTO ("
+                + "PARTITION p20261019 VALUES LESS THAN (" + (TODAY + 2 * DAY) + "), "
+                + "PARTITION p20261020 VALUES LESS THAN (" + (TODAY + 3 * DAY) + "), "
+                + "PARTITION pmax VALUES LESS THAN MAXVALUE)",
+                "ALTER TABLE url_stats DROP PARTITION p20260901, p20260902"), statements);
+        Assertions.assertTrue(partitions(Duration.ofDays(60)).statements(existing, NOW).get(0).startsWith("ALTER TABLE url_stats REORGANIZE"));
+        Assertions.assertEquals(1, partitions(Duration.ofDays(60)).statements(existing, NOW).size());
+    }
+}
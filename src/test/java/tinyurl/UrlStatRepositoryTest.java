@@ -2,19 +2,26 @@ package tinyurl;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
 
 @DataJpaTest
 @RunWith(SpringRunner.class)
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(DataSourceConfig.class)
 public class UrlStatRepositoryTest {
 
     @Autowired
@@ -32,10 +39,10 @@ public class UrlStatRepositoryTest {
     @Test
     public void testCountBy() {
         // given
-        String shortUrl = "short_url";
+        String shortUrl = "abcdefgh";
         String longUrl = "long_url";
         Url url = urlRepository.save(new Url(shortUrl, longUrl));
-        Url unknownUrl = new Url("unknown short_url", longUrl);
+        Url unknownUrl = new Url("cdefghij", longUrl);
         Instant currentInstant = Instant.now();
         Instant oldInstant = currentInstant.minusMillis(ChronoUnit.DAYS.getDuration().toMillis());
         int statCount = 10;
@@ -55,9 +62,85 @@ public class UrlStatRepositoryTest {
         Assertions.assertEquals(0, unknownCount);
     }
 
+    @Test
+    public void testCountByUrls() {
+        // given
+        Url url = urlRepository.save(new Url("abcdefgh", "long_url"));
+        Url otherUrl = urlRepository.save(new Url("bcdefghi", "long_url"));
+        Url unusedUrl = urlRepository.save(new Url("cdefghij", "long_url"));
+        long millis = Instant.now().toEpochMilli();
+        urlStatRepository.insertBatch(new long[]{url.getId(), url.getId(), url.getId(), otherUrl.getId()},
+                                      new long[]{millis - 2000, millis - 1000, millis, millis - 2000}, 4);
+
+        // when
+        Map<Long, long[]> counts = urlStatRepository.countBy(List.of(url.getId(), otherUrl.getId(), unusedUrl.getId()),
+                                                             new long[]{millis - 1, millis - 1500, 0});
+
+        // then
+        Assertions.assertEquals(2, counts.size());
+        Assertions.assertArrayEquals(new long[]{1, 2, 3}, counts.get(url.getId()));
+        Assertions.assertArrayEquals(new long[]{0, 0, 1}, counts.get(otherUrl.getId()));
+        Assertions.assertTrue(urlStatRepository.countBy(List.of(), new long[]{0}).isEmpty());
+    }
+
+    @Test
+    public void testInsertBatch() {
+        // given
+        Url url = urlRepository.save(new Url("abcdefgh", "long_url"));
+        long millis = Instant.now().toEpochMilli();
+        long[] urlIds = new long[]{url.getId(), url.getId(), url.getId(), 0};
+        long[] timestamps = new long[]{millis, millis + 1, millis + 2, 0};
+
+        // when
+        urlStatRepository.insertBatch(urlIds, timestamps, 3);
+        urlStatRepository.insert(url.getId(), millis + 3);
+
+        // then
+        Assertions.assertEquals(4, urlStatRepository.countBy(url.getId(), 0));
+        Assertions.assertEquals(2, urlStatRepository.countBy(url.getId(), millis + 1));
+    }
+
+    @Nested
+    @TestPropertySource(properties = {"tinyurl.stats.ids=snowflake", "tinyurl.stats.node-id=1"})
+    class WithSnowflakeIds {
+        // the outer test's repositories come from the context without the property
+        @Autowired
+        private UrlRepository urlRepository;
+
+        @Autowired
+        private UrlStatRepository urlStatRepository;
+
+        @Test
+        public void testInsertBatch() {
+            // given
+            Url url = urlRepository.save(new Url("abcdefgh", "long_url"));
+            long millis = Instant.now().toEpochMilli();
+
+            // when
+            urlStatRepository.insertBatch(new long[]{url.getId(), url.getId()}, new long[]{millis, millis + 1}, 2);
+            urlStatRepository.insert(url.getId(), millis + 2);
+
+            // then
+            Assertions.assertEquals(3, urlStatRepository.countBy(url.getId(), 0));
+            Assertions.assertTrue(urlStatRepository.findAll().stream()
+                                                   .allMatch(urlStat -> urlStat.getId() > SnowflakeIds.EPOCH_MILLIS));
+        }
+    }
+
+    @Test
+    public void testSnowflakeIdsNeedNodeId() {
+        // given
+        UrlStatRepositoryCustomImpl repository = new UrlStatRepositoryCustomImpl();
+        ReflectionTestUtils.setField(repository, "ids", "snowflake");
+        ReflectionTestUtils.setField(repository, "nodeId", -1L);
+
+        // then
+        Assertions.assertThrows(IllegalStateException.class, repository::init);
+    }
+
     private static void addUrlCount(UrlStatRepository urlStatRepository, Url url, int count, long millis) {
         for (int i = 0; i < count; i++) {
-            urlStatRepository.save(new UrlStat(url, millis + i));
+            urlStatRepository.save(new UrlStat(url.getId(), millis + i));
         }
     }
 }
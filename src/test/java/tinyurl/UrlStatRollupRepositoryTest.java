@@ -0,0 +1,131 @@
+package tinyurl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+@DataJpaTest
+@RunWith(SpringRunner.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(DataSourceConfig.class)
+public class UrlStatRollupRepositoryTest {
+
+    @Autowired
+    private UrlRepository urlRepository;
+
+    @Autowired
+    private UrlStatRepository urlStatRepository;
+
+    @Autowired
+    private UrlStatRollupRepository urlStatRollupRepository;
+
+    @BeforeEach
+    public void before() {
+        urlStatRollupRepository.deleteAll();
+        urlStatRepository.deleteAll();
+        urlRepository.deleteAll();
+    }
+
+    @Test
+    public void testIncrementAndCountBy() {
+        // given
+        Url url = urlRepository.save(new Url("abcdefgh", "long_url"));
+        Url otherUrl = urlRepository.save(new Url("bcdefghi", "long_url"));
+        long currentMillis = Instant.now().toEpochMilli();
+        long oldMillis = currentMillis - ChronoUnit.DAYS.getDuration().toMillis() - UrlStatRollup.BUCKET_MILLIS;
+        long[] urlIds = new long[]{url.getId(), url.getId(), url.getId(), otherUrl.getId()};
+        long[] timestamps = new long[]{currentMillis, currentMillis, oldMillis, currentMillis};
+
+        // when
+        urlStatRollupRepository.increment(urlIds, timestamps, urlIds.length);
+        urlStatRollupRepository.increment(urlIds, timestamps, 1);
+
+        // then
+        long dayMillis = WindowStat.Window.DAY.getQueryTimestamp(currentMillis);
+        long weekMillis = WindowStat.Window.WEEK.getQueryTimestamp(currentMillis);
+        Assertions.assertEquals(3, urlStatRollupRepository.countBy(url.getId(), dayMillis));
+        Assertions.assertEquals(4, urlStatRollupRepository.countBy(url.getId(), weekMillis));
+        Assertions.assertEquals(4, urlStatRollupRepository.countBy(url.getId(), 0));
+        Assertions.assertEquals(1, urlStatRollupRepository.countBy(otherUrl.getId(), 0));
+        Assertions.assertEquals(0, urlStatRollupRepository.countBy(otherUrl.getId() + 1, 0));
+        Map<Long, long[]> counts = urlStatRollupRepository.countBy(List.of(url.getId(), otherUrl.getId()),
+                                                                   new long[]{dayMillis, weekMillis, 0});
+        Assertions.assertArrayEquals(new long[]{3, 4, 4}, counts.get(url.getId()));
+        Assertions.assertArrayEquals(new long[]{1, 1, 1}, counts.get(otherUrl.getId()));
+    }
+
+    @Test
+    public void testRebuildAndPrune() {
+        // given
+        Url url = urlRepository.save(new Url("abcdefgh", "long_url"));
+        long currentMillis = Instant.now().toEpochMilli();
+        long oldMillis = currentMillis - UrlStatRollups.RETENTION_MILLIS - UrlStatRollup.BUCKET_MILLIS;
+        for (long millis : new long[]{currentMillis, currentMillis + 1, oldMillis}) {
+            urlStatRepository.insert(url.getId(), millis);
+        }
+        urlStatRollupRepository.increment(new long[]{url.getId()}, new long[]{currentMillis}, 1);
+
+        // when
+        urlStatRollupRepository.rebuild(url.getId(), url.getId(), 0);
+
+        // then
+        Assertions.assertEquals(3, urlStatRollupRepository.countBy(url.getId(), 0));
+        Assertions.assertEquals(3, urlStatRollupRepository.countBy(url.getId(), oldMillis));
+        Assertions.assertEquals(2, urlStatRollupRepository.countBy(url.getId(), currentMillis));
+
+        // when
+        urlStatRollupRepository.deleteBucketsBefore(UrlStatRollup.bucketStart(currentMillis - UrlStatRollups.RETENTION_MILLIS));
+
+        // then
+        Assertions.assertEquals(3, urlStatRollupRepository.countBy(url.getId(), 0));
+        Assertions.assertEquals(2, urlStatRollupRepository.countBy(url.getId(), oldMillis));
+    }
+
+    @Test
+    public void testRebuildKeepsHigherTotal() {
+        // given
+        Url url = urlRepository.save(new Url("abcdefgh", "long_url"));
+        long currentMillis = Instant.now().toEpochMilli();
+        long[] urlIds = new long[]{url.getId(), url.getId(), url.getId()};
+        urlStatRollupRepository.increment(urlIds, new long[]{currentMillis, currentMillis, currentMillis}, 3);
+        // the other clicks were in a dropped partition
+        urlStatRepository.insert(url.getId(), currentMillis);
+
+        // when
+        urlStatRollupRepository.rebuild(url.getId(), url.getId(), 0);
+
+        // then
+        Assertions.assertEquals(3, urlStatRollupRepository.countBy(url.getId(), 0));
+        Assertions.assertEquals(1, urlStatRollupRepository.countBy(url.getId(), currentMillis));
+    }
+
+    @Test
+    public void testDeleteByUrlIdIn() {
+        // given
+        long millis = Instant.now().toEpochMilli();
+        long[] urlIds = new long[]{1, 2, 3};
+        urlStatRepository.insertBatch(urlIds, new long[]{millis, millis, millis}, 3);
+        urlStatRollupRepository.increment(urlIds, new long[]{millis, millis, millis}, 3);
+
+        // when
+        urlStatRepository.deleteByUrlIdIn(List.of(1L, 2L));
+        urlStatRollupRepository.deleteByUrlIdIn(List.of(1L, 2L));
+
+        // then
+        Assertions.assertEquals(0, urlStatRepository.countBy(1, 0));
+        Assertions.assertEquals(0, urlStatRollupRepository.countBy(2, 0));
+        Assertions.assertEquals(1, urlStatRepository.countBy(3, 0));
+        Assertions.assertEquals(1, urlStatRollupRepository.countBy(3, 0));
+    }
+}
@@ -1,14 +1,22 @@
 package tinyurl;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,18 +24,26 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import tinyurl.clicks.ClickWriter;
+import tinyurl.clicks.JdbcClickWriter;
 import tinyurl.random.RandomUrl;
+import tinyurl.shard.ShardRouter;
 
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @WebMvcTest(UrlStatsController.class)
+@Import({UrlCache.class, ExecutionConfig.class, JdbcClickWriter.class, ClickSketches.class, ShortUrlFilter.class, ShardRouter.class})
 @RunWith(SpringRunner.class)
 public class UrlStatsControllerTest {
     @MockBean
@@ -36,9 +52,16 @@ public class UrlStatsControllerTest {
     @MockBean
     private UrlStatRepository urlStatRepository;
 
+    @MockBean
+    private UrlStatRollupRepository urlStatRollupRepository;
+
     @MockBean
     private RandomUrl randomUrl;
 
+    @Autowired
+    private UrlCache urlCache;
+    @Autowired
+    private ClickWriter clickWriter;
     @Autowired
     private MockMvc mockMvc;
 
@@ -47,10 +70,14 @@ public class UrlStatsControllerTest {
     @Autowired
     private Clock clock;
 
+    @BeforeEach
+    void before() {
+        urlCache.invalidateAll();
+    }
     @Test
     void testUrlStats() throws Exception {
         // given
-        Url savedUrl = new Url(1, "shortUrl", "longUrl");
+        Url savedUrl = new Url(1, "abcdefgh", "longUrl");
         WindowStat dayStat = new WindowStat(WindowStat.Window.DAY, 100);
         WindowStat weekStat = new WindowStat(WindowStat.Window.WEEK, 1000);
         WindowStat allStat = new WindowStat(WindowStat.Window.ALL, 10000);
@@ -73,7 +100,7 @@ public class UrlStatsControllerTest {
     @Test
     void testUrlStatsUnavailable() throws Exception {
         // given
-        Url savedUrl = new Url(1, "shortUrl", "longUrl");
+        Url savedUrl = new Url(1, "abcdefgh", "longUrl");
         when(urlRepository.findByShortUrl(any(String.class))).thenThrow(new RuntimeException());
 
         // then
@@ -89,6 +116,58 @@ public class UrlStatsControllerTest {
                .andExpect(status().isServiceUnavailable());
     }
 
+    @Test
+    void testBulkUrlStats() throws Exception {
+        // given
+        Url savedUrl = new Url(1, "abcdefgh", "longUrl");
+        when(urlRepository.findByShortUrlIn(anyCollection())).thenReturn(List.of(savedUrl));
+        when(urlStatRepository.countBy(anyCollection(), any(long[].class))).thenReturn(Map.of(savedUrl.getId(), new long[]{100, 1000, 10000}));
+
+        // when
+        String body = mockMvc.perform(MockMvcRequestBuilders.post("/urlStats")
+                                                           .content("[\"abcdefgh\", \"bcdefghi\", \"invalid\"]")
+                                                           .contentType(MediaType.APPLICATION_JSON))
+                             .andExpect(status().isOk())
+                             .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                             .andReturn().getResponse().getContentAsString();
+
+        // then
+        List<JsonNode> lines = body.lines().map(line -> {
+            try {
+                return objectMapper.readTree(line);
+            } catch (JsonProcessingException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }).toList();
+        Assertions.assertEquals(3, lines.size());
+        Assertions.assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(Map.of(
+                "shortUrl", "abcdefgh",
+                "stats", List.of(new WindowStat(WindowStat.Window.DAY, 100), new WindowStat(WindowStat.Window.WEEK, 1000),
+                                 new WindowStat(WindowStat.Window.ALL, 10000))))), lines.get(0));
+        Assertions.assertEquals("bcdefghi", lines.get(1).get("shortUrl").asText());
+        Assertions.assertTrue(lines.get(1).has("error"));
+        Assertions.assertEquals("invalid", lines.get(2).get("shortUrl").asText());
+        Assertions.assertTrue(lines.get(2).has("error"));
+        verify(urlStatRepository).countBy(eq(List.of(savedUrl.getId())), any(long[].class));
+    }
+
+    @Test
+    void testTopLinksDisabled() throws Exception {
+        // then
+        mockMvc.perform(MockMvcRequestBuilders.get("/topLinks"))
+               .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testWriteWithoutRollups() {
+        // when
+        clickWriter.write(new long[]{1, 2}, new long[]{clock.millis(), clock.millis()}, 2);
+
+        // then
+        verify(urlStatRepository).insertBatch(any(long[].class), any(long[].class), eq(2));
+        verify(urlStatRollupRepository, never()).increment(any(long[].class), any(long[].class), anyInt());
+    }
+
     @TestConfiguration
     public static class Config {
         @Bean
@@ -0,0 +1,13 @@
+package tinyurl;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "spring.threads.virtual.enabled=true")
+class VirtualThreadsStatsLatencyBenchmark extends StatsLatencyBenchmark {
+    @BeforeAll
+    static void requireVirtualThreads() {
+        Assumptions.assumeTrue(Runtime.version().feature() >= 21, "Virtual threads require Java 21.");
+    }
+}
@@ -0,0 +1,109 @@
+package tinyurl.clicks;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.stream.Stream;
+
+public class ClickLogTest {
+    private static final long DAY = Duration.ofDays(1).toMillis();
+    private static final long NOW = 100 * DAY;
+
+    @TempDir
+    Path dir;
+
+    private ClickLog clickLog(long currentMillis, Duration retention) throws IOException {
+        return new ClickLog(dir, 4, retention, Clock.fixed(Instant.ofEpochMilli(currentMillis), ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testCountByWindow() throws IOException {
+        // given
+        ClickLog clickLog = clickLog(NOW, Duration.ZERO);
+
+        // when
+        // 10 records over 3 segments of 4
+        clickLog.write(new long[]{1, 2, 1, 1, 2, 1, 1, 2, 1, 1},
+                       new long[]{NOW - 9 * DAY, NOW - 8 * DAY, NOW - 8 * DAY, NOW - 3 * DAY, NOW - 3 * DAY,
+                                  NOW - 2 * DAY, NOW - DAY / 2, NOW - DAY / 2, NOW - 1000, NOW - 10}, 10);
+
+        // then
+        Assertions.assertEquals(3, segments());
+        Assertions.assertEquals(3, clickLog.countBy(1, NOW - DAY));
+        Assertions.assertEquals(5, clickLog.countBy(1, NOW - 7 * DAY));
+        Assertions.assertEquals(7, clickLog.countBy(1, 0));
+        Assertions.assertEquals(3, clickLog.countBy(2, 0));
+        Assertions.assertEquals(0, clickLog.countBy(3, 0));
+        clickLog.close();
+    }
+
+    @Test
+    public void testRecover() throws IOException {
+        // given
+        ClickLog clickLog = clickLog(NOW, Duration.ZERO);
+        clickLog.write(new long[]{1, 1, 1, 1, 1, 1}, new long[]{1, 2, 3, 4, 5, 6}, 6);
+        clickLog.delete(2);
+        clickLog.close();
+
+        // when
+        ClickLog recovered = clickLog(NOW, Duration.ZERO);
+        recovered.write(1, 7);
+        recovered.write(1, 8);
+        recovered.write(1, 9);
+
+        // then
+        Assertions.assertEquals(9, recovered.countBy(1, 0));
+        Assertions.assertEquals(3, segments());
+        recovered.close();
+    }
+
+    @Test
+    public void testDeleteAndCompact() throws IOException {
+        // given
+        ClickLog clickLog = clickLog(NOW, Duration.ofDays(7));
+        clickLog.write(new long[]{1, 2, 1, 2, 1, 2, 2, 2, 1},
+                       new long[]{NOW - 10 * DAY, NOW - 10 * DAY, NOW - 9 * DAY, NOW - 9 * DAY,
+                                  NOW - DAY, NOW - DAY, NOW - DAY, NOW - DAY, NOW - 10}, 9);
+
+        // when
+        clickLog.delete(2);
+        clickLog.write(2, NOW + 1);
+
+        // then
+        Assertions.assertEquals(1, clickLog.countBy(2, 0));
+        Assertions.assertEquals(4, clickLog.countBy(1, 0));
+
+        // when
+        long removed = clickLog.compact();
+
+        // then
+        // the expired first segment and the deleted url's clicks in the second
+        Assertions.assertEquals(7, removed);
+        Assertions.assertEquals(2, segments());
+        Assertions.assertEquals(1, clickLog.countBy(2, 0));
+        Assertions.assertEquals(2, clickLog.countBy(1, 0));
+        clickLog.close();
+
+        // when
+        ClickLog recovered = clickLog(NOW, Duration.ofDays(7));
+
+        // then
+        Assertions.assertEquals(1, recovered.countBy(2, 0));
+        Assertions.assertEquals(2, recovered.countBy(1, 0));
+        recovered.close();
+    }
+
+    private long segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".log")).count();
+        }
+    }
+}
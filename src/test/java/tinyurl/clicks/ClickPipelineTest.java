@@ -0,0 +1,122 @@
+package tinyurl.clicks;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+public class ClickPipelineTest {
+    private ClickWriter clickWriter;
+
+    @BeforeEach
+    public void before() {
+        clickWriter = mock(ClickWriter.class);
+    }
+
+    @Test
+    public void testFlushInBatchesAndDrainOnStop() {
+        // given
+        ClickPipeline pipeline = pipeline(100, 10, BackpressurePolicy.DROP, 0);
+        pipeline.start();
+
+        // when
+        for (int i = 0; i < 25; i++) {
+            Assertions.assertTrue(pipeline.record(1, i));
+        }
+        pipeline.stop();
+
+        // then
+        verify(clickWriter, times(2)).write(any(), any(), eq(10));
+        verify(clickWriter).write(any(), any(), eq(5));
+        Assertions.assertEquals(25, pipeline.flushedCount());
+        Assertions.assertEquals(0, pipeline.queueDepth());
+        Assertions.assertFalse(pipeline.isRunning());
+        Assertions.assertFalse(pipeline.record(1, 26));
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        // given
+        ClickPipeline pipeline = pipeline(4, 4, BackpressurePolicy.DROP, 0);
+
+        // when
+        for (int i = 0; i < 6; i++) {
+            pipeline.record(1, i);
+        }
+
+        // then
+        Assertions.assertEquals(4, pipeline.queueDepth());
+        Assertions.assertEquals(2, pipeline.droppedCount());
+        verifyNoInteractions(clickWriter);
+    }
+
+    @Test
+    public void testBlockTimesOutWhenFull() {
+        // given
+        ClickPipeline pipeline = pipeline(2, 2, BackpressurePolicy.BLOCK, 0);
+
+        // when
+        Assertions.assertTrue(pipeline.record(1, 1));
+        Assertions.assertTrue(pipeline.record(1, 2));
+        Assertions.assertFalse(pipeline.record(1, 3));
+
+        // then
+        Assertions.assertEquals(1, pipeline.droppedCount());
+    }
+
+    @Test
+    public void testSampleOnceHalfFull() {
+        // given
+        ClickPipeline pipeline = pipeline(4, 4, BackpressurePolicy.SAMPLE, 0);
+
+        // when
+        for (int i = 0; i < 4; i++) {
+            pipeline.record(1, i);
+        }
+
+        // then
+        Assertions.assertEquals(2, pipeline.queueDepth());
+        Assertions.assertEquals(2, pipeline.droppedCount());
+    }
+
+    @Test
+    public void testDropClicksOfDeletedUrls() {
+        // given
+        ClickPipeline pipeline = pipeline(10, 10, BackpressurePolicy.DROP, 0);
+        pipeline.start();
+
+        // when
+        pipeline.record(1, 1);
+        pipeline.record(2, 2);
+        pipeline.record(3, 3);
+        pipeline.forget(2, 5);
+        // a url created with the same short url afterwards
+        pipeline.record(2, 6);
+        pipeline.stop();
+
+        // then
+        ArgumentCaptor<long[]> urlIds = ArgumentCaptor.forClass(long[].class);
+        ArgumentCaptor<long[]> timestamps = ArgumentCaptor.forClass(long[].class);
+        verify(clickWriter).write(urlIds.capture(), timestamps.capture(), eq(3));
+        Assertions.assertArrayEquals(new long[]{1, 3, 2}, Arrays.copyOf(urlIds.getValue(), 3));
+        Assertions.assertArrayEquals(new long[]{1, 3, 6}, Arrays.copyOf(timestamps.getValue(), 3));
+        Assertions.assertEquals(3, pipeline.flushedCount());
+        Assertions.assertEquals(1, pipeline.droppedCount());
+        Assertions.assertEquals(0, pipeline.failedCount());
+    }
+
+    private ClickPipeline pipeline(int capacity, int batchSize, BackpressurePolicy policy, double sampleRate) {
+        return new ClickPipeline(clickWriter, capacity, batchSize, Duration.ofHours(1), policy, sampleRate,
+                                 Duration.ofMillis(10), Duration.ofSeconds(10));
+    }
+}
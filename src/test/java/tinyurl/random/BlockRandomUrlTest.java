@@ -0,0 +1,79 @@
+package tinyurl.random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.HashSet;
+import java.util.Set;
+
+@DataJpaTest
+@RunWith(SpringRunner.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(BlockRandomUrl.class)
+@TestPropertySource(properties = {"tinyurl.short-url.generator=block", "tinyurl.short-url.block-size=10"})
+public class BlockRandomUrlTest {
+
+    @Autowired
+    private RandomUrl randomUrl;
+
+    @Autowired
+    private ShortUrlSequenceRepository sequenceRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testGenerateFromBlocks() {
+        // given
+        BlockRandomUrl otherNode = new BlockRandomUrl(sequenceRepository, transactionManager, 10, 25214903917L);
+        Set<String> shortUrls = new HashSet<>();
+
+        // when
+        for (int i = 0; i < 25; i++) {
+            shortUrls.add(randomUrl.generate());
+            shortUrls.add(otherNode.generate());
+        }
+
+        // then
+        Assertions.assertEquals(50, shortUrls.size());
+        Assertions.assertEquals(60, sequenceRepository.nextValue(BlockRandomUrl.SEQUENCE_NAME));
+        shortUrls.forEach(shortUrl -> Assertions.assertEquals(ShortUrlCodec.SHORT_URL_LENGTH, shortUrl.length()));
+    }
+
+    @Test
+    public void testCreateSequenceOnce() {
+        // when
+        sequenceRepository.create(BlockRandomUrl.SEQUENCE_NAME);
+        sequenceRepository.advance(10, BlockRandomUrl.SEQUENCE_NAME);
+        sequenceRepository.create(BlockRandomUrl.SEQUENCE_NAME);
+
+        // then
+        Assertions.assertEquals(1, sequenceRepository.count());
+        Assertions.assertEquals(10, sequenceRepository.nextValue(BlockRandomUrl.SEQUENCE_NAME));
+    }
+
+    @Test
+    public void testScrambleIsBijective() {
+        // given
+        int[] roundKeys = BlockRandomUrl.roundKeys(42);
+        Set<Long> scrambled = new HashSet<>();
+
+        // when
+        for (long value = 0; value < 100_000; value++) {
+            scrambled.add(BlockRandomUrl.scramble(value, roundKeys));
+        }
+
+        // then
+        Assertions.assertEquals(100_000, scrambled.size());
+        scrambled.forEach(value -> Assertions.assertTrue(value >= 0 && value <= ShortUrlCodec.MAX_VALUE));
+        Assertions.assertNotEquals(BlockRandomUrl.scramble(1, roundKeys), BlockRandomUrl.scramble(0, roundKeys) + 1);
+    }
+}
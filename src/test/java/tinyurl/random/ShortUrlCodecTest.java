@@ -0,0 +1,47 @@
+package tinyurl.random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ShortUrlCodecTest {
+
+    @Test
+    public void testEncodeDecode() {
+        // given
+        long[] keys = {0, 1, 31, 32, 123_456_789, ShortUrlCodec.MAX_VALUE};
+
+        // then
+        for (long key : keys) {
+            String shortUrl = ShortUrlCodec.encode(key);
+            Assertions.assertEquals(ShortUrlCodec.SHORT_URL_LENGTH, shortUrl.length());
+            Assertions.assertEquals(key, ShortUrlCodec.decode(shortUrl));
+        }
+        Assertions.assertEquals("22222222", ShortUrlCodec.encode(0));
+        Assertions.assertEquals("zzzzzzzz", ShortUrlCodec.encode(ShortUrlCodec.MAX_VALUE));
+    }
+
+    @Test
+    public void testEncodeIntoBuffer() {
+        // given
+        char[] chars = new char[ShortUrlCodec.SHORT_URL_LENGTH + 2];
+
+        // when
+        ShortUrlCodec.encode(33, chars, 2);
+
+        // then
+        Assertions.assertEquals("22222233", new String(chars, 2, ShortUrlCodec.SHORT_URL_LENGTH));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ShortUrlCodec.encode(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ShortUrlCodec.encode(ShortUrlCodec.MAX_VALUE + 1));
+    }
+
+    @Test
+    public void testIsValid() {
+        Assertions.assertTrue(ShortUrlCodec.isValid("abcdefgh"));
+        Assertions.assertFalse(ShortUrlCodec.isValid(null));
+        Assertions.assertFalse(ShortUrlCodec.isValid("abcdefg"));
+        Assertions.assertFalse(ShortUrlCodec.isValid("abcdefghi"));
+        Assertions.assertFalse(ShortUrlCodec.isValid("abcdefgo"));
+        Assertions.assertFalse(ShortUrlCodec.isValid("ABCDEFGH"));
+        Assertions.assertFalse(ShortUrlCodec.isValid("abcdefgé"));
+    }
+}
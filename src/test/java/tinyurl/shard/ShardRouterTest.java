@@ -0,0 +1,52 @@
+package tinyurl.shard;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tinyurl.random.ShortUrlCodec;
+
+public class ShardRouterTest {
+
+    @Test
+    public void testShardOf() {
+        // given
+        ShardRouter router = new ShardRouter(4, 3);
+        int[] counts = new int[4];
+        int moved = 0;
+
+        // when
+        for (long key = 0; key < 40000; key++) {
+            String shortUrl = ShortUrlCodec.encode(key * 7919);
+            int shard = router.shardOf(shortUrl);
+            int previousShard = router.previousShardOf(shortUrl);
+            counts[shard]++;
+            if (shard != previousShard) {
+                moved++;
+                // urls only move to the new shard
+                Assertions.assertEquals(3, shard);
+            }
+        }
+
+        // then
+        for (int count : counts) {
+            Assertions.assertEquals(10000, count, 500);
+        }
+        Assertions.assertEquals(10000, moved, 500);
+    }
+
+    @Test
+    public void testOnShard() {
+        // given
+        Assertions.assertNull(ShardRouter.currentShard());
+
+        // when
+        int inner = ShardRouter.onShard(1, () -> ShardRouter.onShard(2, ShardRouter::currentShard));
+        int outer = ShardRouter.onShard(1, ShardRouter::currentShard);
+
+        // then
+        Assertions.assertEquals(2, inner);
+        Assertions.assertEquals(1, outer);
+        Assertions.assertNull(ShardRouter.currentShard());
+        Assertions.assertTrue(new ShardRouter(2, 2).isSharded());
+        Assertions.assertFalse(new ShardRouter(1, 1).isSharded());
+    }
+}
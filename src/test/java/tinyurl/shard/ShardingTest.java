@@ -0,0 +1,164 @@
+package tinyurl.shard;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import tinyurl.Url;
+import tinyurl.UrlReaper;
+import tinyurl.UrlRepository;
+import tinyurl.random.ShortUrlCodec;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:shard0;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "tinyurl.shards.count=3",
+        "tinyurl.shards.previous-count=2",
+        "tinyurl.datasource.shards[1].url=jdbc:h2:mem:shard1;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "tinyurl.datasource.shards[1].username=sa",
+        "tinyurl.datasource.shards[2].url=jdbc:h2:mem:shard2;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "tinyurl.datasource.shards[2].username=sa"
+})
+@RunWith(SpringRunner.class)
+public class ShardingTest {
+    @Autowired
+    private UrlRepository urlRepository;
+
+    @Autowired
+    private UrlResharder urlResharder;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private UrlReaper urlReaper;
+
+    @Autowired
+    private Clock clock;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void before() {
+        shardRouter.forEachShard(shard -> jdbcTemplate.update("DELETE FROM urls"));
+    }
+
+    @Test
+    public void testSaveOnShard() {
+        // given
+        List<String> shortUrls = shortUrls(false, 20);
+
+        // when
+        shortUrls.forEach(shortUrl -> urlRepository.save(new Url(shortUrl, "long_url")));
+
+        // then
+        for (String shortUrl : shortUrls) {
+            Assertions.assertEquals(1, countOn(shardRouter.shardOf(shortUrl), shortUrl));
+            Assertions.assertEquals("long_url", urlRepository.findByShortUrl(shortUrl).get().getLongUrl());
+        }
+        Assertions.assertEquals(20, urlRepository.findByShortUrlIn(shortUrls).size());
+
+        // when
+        urlRepository.deleteByShortUrl(shortUrls.get(0));
+
+        // then
+        Assertions.assertTrue(urlRepository.findByShortUrl(shortUrls.get(0)).isEmpty());
+    }
+
+    @Test
+    public void testReshard() {
+        // given
+        List<String> moving = shortUrls(true, 5);
+        for (String shortUrl : moving) {
+            Url url = new Url(shortUrl, "old_long_url");
+            ShardRouter.onShard(shardRouter.previousShardOf(shortUrl), () -> jdbcTemplate.update(
+                    "INSERT INTO urls (id, short_url, short_key, long_url) VALUES (?, ?, ?, ?)",
+                    url.getId(), url.getShortUrl(), url.getShortKey(), url.getLongUrl()));
+        }
+        String taken = moving.get(0);
+
+        // when
+        boolean conflict = false;
+        try {
+            urlRepository.save(new Url(taken, "new_long_url"));
+        } catch (DataIntegrityViolationException ex) {
+            conflict = true;
+        }
+
+        // then
+        Assertions.assertTrue(conflict);
+        Assertions.assertEquals(5, urlRepository.findByShortUrlIn(moving).size());
+
+        // when
+        long moved = urlResharder.reshard();
+
+        // then
+        Assertions.assertEquals(5, moved);
+        for (String shortUrl : moving) {
+            Assertions.assertEquals(0, countOn(shardRouter.previousShardOf(shortUrl), shortUrl));
+            Assertions.assertEquals(1, countOn(shardRouter.shardOf(shortUrl), shortUrl));
+            Assertions.assertEquals("old_long_url", urlRepository.findByShortUrl(shortUrl).get().getLongUrl());
+        }
+    }
+
+    @Test
+    public void testFlushAccessesAndReap() {
+        // given
+        List<String> shortUrls = shortUrls(false, 10);
+        shortUrls.forEach(shortUrl -> urlRepository.save(new Url(shortUrl, "long_url")));
+        long oldMillis = clock.millis() - Duration.ofDays(2).toMillis();
+        shardRouter.forEachShard(shard -> jdbcTemplate.update("UPDATE urls SET last_access_millis=?", oldMillis));
+        List<String> accessed = shortUrls.subList(0, 5);
+        ReflectionTestUtils.setField(urlReaper, "enabled", true);
+        ReflectionTestUtils.setField(urlReaper, "unusedAfter", Duration.ofDays(1));
+
+        try {
+            // when
+            accessed.forEach(shortUrl -> urlReaper.recordAccess(urlRepository.findByShortUrl(shortUrl).get(), clock.millis()));
+            urlReaper.flushAccesses();
+
+            // then
+            Assertions.assertTrue(((Set<?>) ReflectionTestUtils.getField(urlReaper, "accessed")).isEmpty());
+            for (String shortUrl : accessed) {
+                Assertions.assertTrue(urlRepository.findByShortUrl(shortUrl).get().getLastAccessMillis() > oldMillis);
+            }
+
+            // when
+            long reaped = urlReaper.reap();
+
+            // then
+            Assertions.assertEquals(5, reaped);
+            for (String shortUrl : shortUrls) {
+                Assertions.assertEquals(accessed.contains(shortUrl) ? 1 : 0, countOn(shardRouter.shardOf(shortUrl), shortUrl));
+            }
+        } finally {
+            ReflectionTestUtils.setField(urlReaper, "enabled", false);
+            ReflectionTestUtils.setField(urlReaper, "unusedAfter", Duration.ZERO);
+        }
+    }
+
+    private List<String> shortUrls(boolean moving, int limit) {
+        return LongStream.iterate(1, key -> key + 104729)
+                         .mapToObj(ShortUrlCodec::encode)
+                         .filter(shortUrl -> moving == (shardRouter.shardOf(shortUrl) != shardRouter.previousShardOf(shortUrl)))
+                         .limit(limit)
+                         .toList();
+    }
+
+    private int countOn(int shard, String shortUrl) {
+        return ShardRouter.onShard(shard, () -> jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM urls WHERE short_url=?", Integer.class, shortUrl));
+    }
+}
@@ -0,0 +1,66 @@
+package tinyurl.shard;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import tinyurl.random.ShortUrlCodec;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+public class UrlShardingInterceptorTest {
+
+    @Test
+    public void testWritePartitionedResults() {
+        // given
+        ShardRouter router = new ShardRouter(3, 3);
+        Writes writes = proxy(router);
+        List<String> shortUrls = LongStream.range(1, 30).mapToObj(ShortUrlCodec::encode).toList();
+
+        // when
+        int updated = writes.update(shortUrls);
+        List<Integer> shards = writes.shards(shortUrls);
+        writes.touch(shortUrls);
+
+        // then
+        Assertions.assertEquals(shortUrls.size(), updated);
+        Assertions.assertEquals(Set.of(0, 1, 2), new HashSet<>(shards));
+        Assertions.assertEquals(0, writes.update(List.of()));
+    }
+
+    private static Writes proxy(ShardRouter router) {
+        ProxyFactory factory = new ProxyFactory(new ShardWrites());
+        factory.addInterface(Writes.class);
+        factory.addAdvice(new UrlShardingInterceptor(router, new JdbcTemplate()));
+        return (Writes) factory.getProxy();
+    }
+
+    public interface Writes {
+        int update(@ShardKey Collection<String> shortUrls);
+
+        List<Integer> shards(@ShardKey Collection<String> shortUrls);
+
+        void touch(@ShardKey Collection<String> shortUrls);
+    }
+
+    private static class ShardWrites implements Writes {
+        @Override
+        public int update(Collection<String> shortUrls) {
+            return shortUrls.size();
+        }
+
+        @Override
+        public List<Integer> shards(Collection<String> shortUrls) {
+            return new ArrayList<>(List.of(ShardRouter.currentShard()));
+        }
+
+        @Override
+        public void touch(Collection<String> shortUrls) {
+        }
+    }
+}